@@ -0,0 +1,194 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+// Borrow and return counts per minute, hour and day, updated as each event happens.
+// Every resolution is a ring buffer of primitive counters: slot i holds the bucket
+// whose number (local time / bucket length) is i modulo the capacity, stamped with
+// that number so a slot left over from an earlier lap reads as zero and is reset on
+// the next write; a late event for a bucket the ring has already lapped is dropped.
+// A tumbling window is one bucket; a sliding window is the sum of the last n, so
+// "borrows per hour over the last 7 days" reads 168 counters and never touches the
+// transaction log. Buckets follow the local clock (a day bucket is a calendar day).
+// Thread-safe.
+public class ActivitySeries {
+
+    public enum Resolution {
+        MINUTE(60_000L, 24 * 60),        // the last day
+        HOUR(3_600_000L, 92 * 24),       // the last 92 days
+        DAY(86_400_000L, 2 * 366);       // the last two years
+
+        final long millis;
+        final int capacity;
+
+        Resolution(long millis, int capacity) {
+            this.millis = millis;
+            this.capacity = capacity;
+        }
+
+        // Buckets kept
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    private final ZoneRules rules;
+    private final Ring[] rings = new Ring[Resolution.values().length];
+
+    private static final class Ring {
+        final long[] bucket;  // bucket number held by each slot, -1 if none yet
+        final long[] borrows;
+        final long[] returns;
+
+        Ring(int capacity) {
+            bucket = new long[capacity];
+            borrows = new long[capacity];
+            returns = new long[capacity];
+            Arrays.fill(bucket, -1);
+        }
+
+        // Slot for writing a bucket, or -1 if the slot already holds a later lap, i.e.
+        // the bucket is older than the ring reaches back
+        int slot(long number) {
+            int slot = (int) Math.floorMod(number, (long) bucket.length);
+            if (bucket[slot] > number) return -1;
+            if (bucket[slot] != number) {
+                bucket[slot] = number;
+                borrows[slot] = 0;
+                returns[slot] = 0;
+            }
+            return slot;
+        }
+
+        long get(long[] counts, long number) {
+            int slot = (int) Math.floorMod(number, (long) bucket.length);
+            return bucket[slot] == number ? counts[slot] : 0;
+        }
+    }
+
+    public ActivitySeries() {
+        this(ZoneId.systemDefault());
+    }
+
+    public ActivitySeries(ZoneId zone) {
+        this.rules = zone.getRules();
+        for (Resolution resolution : Resolution.values()) {
+            rings[resolution.ordinal()] = new Ring(resolution.capacity);
+        }
+    }
+
+    // Only borrows and returns are counted
+    public synchronized void record(TransactionJournal.Type type, long timestamp) {
+        boolean borrow = type == TransactionJournal.Type.BORROW;
+        if (!borrow && type != TransactionJournal.Type.RETURN) return;
+        long local = localMillis(timestamp);
+        for (Resolution resolution : Resolution.values()) {
+            Ring ring = rings[resolution.ordinal()];
+            int slot = ring.slot(Math.floorDiv(local, resolution.millis));
+            if (slot < 0) continue;
+            if (borrow) ring.borrows[slot]++;
+            else ring.returns[slot]++;
+        }
+    }
+
+    // Borrows in each of the last n buckets up to and including the one holding now,
+    // oldest first; buckets older than the ring holds read as zero
+    public long[] borrows(Resolution resolution, int n, long now) {
+        return series(resolution, n, now, true);
+    }
+
+    public long[] returns(Resolution resolution, int n, long now) {
+        return series(resolution, n, now, false);
+    }
+
+    // Sliding window: borrows over the last n buckets
+    public long totalBorrows(Resolution resolution, int n, long now) {
+        long total = 0;
+        for (long count : borrows(resolution, n, now)) total += count;
+        return total;
+    }
+
+    public long totalReturns(Resolution resolution, int n, long now) {
+        long total = 0;
+        for (long count : returns(resolution, n, now)) total += count;
+        return total;
+    }
+
+    // Borrows by hour of the day (index 0 = midnight to 1am) over the last n days
+    public synchronized long[] borrowsByHourOfDay(int days, long now) {
+        long[] byHour = new long[24];
+        Ring ring = rings[Resolution.HOUR.ordinal()];
+        long last = Math.floorDiv(localMillis(now), Resolution.HOUR.millis);
+        long first = last - Math.min((long) days * 24, Resolution.HOUR.capacity) + 1;
+        for (long number = first; number <= last; number++) {
+            byHour[(int) Math.floorMod(number, 24L)] += ring.get(ring.borrows, number);
+        }
+        return byHour;
+    }
+
+    // Local start time of the first bucket of borrows(resolution, n, now)
+    public LocalDateTime bucketStart(Resolution resolution, int n, long now) {
+        long last = Math.floorDiv(localMillis(now), resolution.millis);
+        long start = (last - n + 1) * resolution.millis;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(start, 1000L), 0, ZoneOffset.UTC);
+    }
+
+    private synchronized long[] series(Resolution resolution, int n, long now, boolean borrows) {
+        if (n < 0) throw new IllegalArgumentException("Bucket count must not be negative");
+        Ring ring = rings[resolution.ordinal()];
+        long[] counts = borrows ? ring.borrows : ring.returns;
+        long last = Math.floorDiv(localMillis(now), resolution.millis);
+        long[] series = new long[n];
+        for (int i = 0; i < n && i < resolution.capacity; i++) {
+            series[n - 1 - i] = ring.get(counts, last - i);
+        }
+        return series;
+    }
+
+    private long localMillis(long timestamp) {
+        Instant instant = Instant.ofEpochMilli(timestamp);
+        return timestamp + rules.getOffset(instant).getTotalSeconds() * 1000L;
+    }
+
+    // Only slots in use are written
+    synchronized void write(DataOutput out) throws IOException {
+        for (Ring ring : rings) {
+            int used = 0;
+            for (long number : ring.bucket) {
+                if (number != -1) used++;
+            }
+            out.writeInt(ring.bucket.length);
+            out.writeInt(used);
+            for (int slot = 0; slot < ring.bucket.length; slot++) {
+                if (ring.bucket[slot] == -1) continue;
+                out.writeLong(ring.bucket[slot]);
+                out.writeLong(ring.borrows[slot]);
+                out.writeLong(ring.returns[slot]);
+            }
+        }
+    }
+
+    static ActivitySeries read(DataInput in) throws IOException {
+        ActivitySeries series = new ActivitySeries();
+        for (Ring ring : series.rings) {
+            if (in.readInt() != ring.bucket.length) throw new IOException("Activity series size mismatch");
+            int used = in.readInt();
+            for (int i = 0; i < used; i++) {
+                long number = in.readLong();
+                int slot = (int) Math.floorMod(number, (long) ring.bucket.length);
+                ring.bucket[slot] = number;
+                ring.borrows[slot] = in.readLong();
+                ring.returns[slot] = in.readLong();
+            }
+        }
+        return series;
+    }
+}
@@ -0,0 +1,100 @@
+package library;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Writes checkpoints on a background thread. The caller only pays for opening a
+// point-in-time view of the collection; streaming it to disk happens elsewhere,
+// so borrowers are not held up by a large snapshot.
+public class BackgroundSnapshotter implements AutoCloseable {
+    // Other state saved with every checkpoint, e.g. the co-borrow index. capture() runs
+    // on the requesting thread right after the catalog view is fixed, so it must be
+    // cheap; the write it returns runs on the writer thread before the journal records
+    // the checkpoint covers are dropped.
+    public interface Companion {
+        Write capture();
+    }
+
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    private final LibraryCollection<Book> library;
+    private final TransactionJournal journal;
+    private final String snapshotFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Companion> companions = new CopyOnWriteArrayList<>();
+    private Future<?> running = CompletableFuture.completedFuture(null);
+    private volatile long lastMillis;
+    private volatile int lastBooks;
+
+    public BackgroundSnapshotter(LibraryCollection<Book> library, TransactionJournal journal, String snapshotFile) {
+        this.library = library;
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+    }
+
+    public void addCompanion(Companion companion) {
+        companions.add(companion);
+    }
+
+    // Start a snapshot of the collection as it is now. Returns false, without doing
+    // anything, while the previous one is still being written; callers just retry later.
+    public synchronized boolean request() {
+        if (!running.isDone()) return false;
+        RecoveryManager.PendingCheckpoint checkpoint = RecoveryManager.beginCheckpoint(library, journal);
+        List<Write> writes = new ArrayList<>(companions.size());
+        for (Companion companion : companions) {
+            writes.add(companion.capture());
+        }
+        running = executor.submit(() -> {
+            // A companion that fails only loses its own records; the checkpoint goes ahead
+            for (Write write : writes) {
+                try {
+                    write.run();
+                } catch (IOException e) {
+                    System.err.println("✗ Error saving with snapshot: " + e.getMessage());
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                checkpoint.write(journal, snapshotFile);
+                lastBooks = checkpoint.size();
+                lastMillis = (System.nanoTime() - start) / 1_000_000;
+            } catch (IOException e) {
+                System.err.println("✗ Error writing snapshot: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    // Block until the snapshot in progress, if any, has been written
+    public void awaitIdle() {
+        Future<?> current;
+        synchronized (this) {
+            current = running;
+        }
+        try {
+            current.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("✗ Snapshot failed: " + e.getCause());
+        }
+    }
+
+    public long getLastMillis() { return lastMillis; }
+    public int getLastBooks() { return lastBooks; }
+
+    @Override
+    public void close() {
+        awaitIdle();
+        executor.shutdown();
+    }
+}
@@ -1,53 +1,234 @@
 package library;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.LocalDate;
+import java.util.Objects;
 
 public class Book implements Comparable<Book>, Serializable {
+    // Pinned to the original computed value so existing library_books.dat files stay readable
+    private static final long serialVersionUID = -4802952588255721127L;
+
+    // The serialized form is still the original fields (see writeObject and readObject)
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("author", String.class),
+        new ObjectStreamField("isAvailable", boolean.class),
+        new ObjectStreamField("isbn", String.class),
+        new ObjectStreamField("publishDate", LocalDate.class),
+        new ObjectStreamField("borrowCount", int.class)
+    };
+
+    // Compact layout: the ISBN, publish date and availability live in primitive fields
+    // rather than objects of their own (see MemoryBenchmark --footprint)
+    private static final long BORROWED = 1;  // flags in the low bits of dayAndFlags
+    private static final long DATED = 2;
+    private static final int FLAG_BITS = 2;
+
     private String title;
     private String author;
-    private boolean isAvailable = true;
-    private String isbn;
-    private LocalDate publishDate;
-    private int borrowCount = 0;
+    private long isbnCode;  // ISBN packed by IsbnCodes, or 0 if it does not pack
+    private String isbnText;  // ISBN that does not pack, else null
+    private long dayAndFlags;  // publish date as epochDay << FLAG_BITS | DATED if set, | BORROWED if checked out
+    private int borrowCount;
+    private transient volatile BookListener listener;  // owning collection, if any
+    transient String storeKey;  // key assigned by a disk-backed BookStore, if any
+    transient int storePosition = -1;  // insertion position in HeapBookStore, if any
+    // Collation keys (see CollationKeys), computed on first comparison after a change
+    private transient volatile CollationKeys.Key titleKey;
+    private transient volatile CollationKeys.Key authorKey;
 
+    // Titles and authors repeat across books, so one instance of each is shared (see StringPool)
     public Book(String title, String author) {
-        this.title = title;
-        this.author = author;
+        this.title = StringPool.TITLES.intern(title);
+        this.author = StringPool.AUTHORS.intern(author);
+    }
+
+    private Book() {
+    }
+
+    // Throwaway book that keeps its strings out of StringPool, e.g. for calibration samples
+    static Book unpooled(String title, String author) {
+        Book book = new Book();
+        book.title = title;
+        book.author = author;
+        return book;
     }
 
     public Book(String title, String author, String isbn, LocalDate publishDate) {
-        this.title = title;
-        this.author = author;
-        this.isbn = isbn;
-        this.publishDate = publishDate;
+        this.title = StringPool.TITLES.intern(title);
+        this.author = StringPool.AUTHORS.intern(author);
+        storeIsbn(isbn);
+        this.dayAndFlags = dateBits(publishDate);
     }
 
     public String getTitle() { return title; }
     public String getAuthor() { return author; }
-    public boolean isAvailable() { return isAvailable; }
-    public String getIsbn() { return isbn; }
-    public LocalDate getPublishDate() { return publishDate; }
+    public boolean isAvailable() { return (dayAndFlags & BORROWED) == 0; }
     public int getBorrowCount() { return borrowCount; }
 
-    public void setTitle(String title) { this.title = title; }
-    public void setAuthor(String author) { this.author = author; }
+    public LocalDate getPublishDate() {
+        long bits = dayAndFlags;
+        return (bits & DATED) == 0 ? null : LocalDate.ofEpochDay(bits >> FLAG_BITS);
+    }
+
+    // Decoded on each call for a packed ISBN; stores and indexes use isbnCode instead
+    public String getIsbn() {
+        long code = isbnCode;
+        return code != 0 ? IsbnCodes.unpack(code) : isbnText;
+    }
+
+    // The packed ISBN (see IsbnCodes), or 0 if there is none or it is kept as text
+    long isbnCode() { return isbnCode; }
+
+    public synchronized void setTitle(String title) {
+        if (Objects.equals(this.title, title)) return;
+        BookListener l = beforeChange(BookField.TITLE);
+        this.title = StringPool.TITLES.intern(title);
+        afterChange(l, BookField.TITLE);
+    }
+
+    public synchronized void setAuthor(String author) {
+        if (Objects.equals(this.author, author)) return;
+        BookListener l = beforeChange(BookField.AUTHOR);
+        this.author = StringPool.AUTHORS.intern(author);
+        afterChange(l, BookField.AUTHOR);
+    }
+
     public synchronized void setAvailable(boolean available) { 
-        this.isAvailable = available; 
+        if (isAvailable() == available) return;
+        BookListener l = beforeChange(BookField.AVAILABILITY);
+        dayAndFlags = available ? dayAndFlags & ~BORROWED : dayAndFlags | BORROWED;
+        afterChange(l, BookField.AVAILABILITY);
+    }
+
+    public synchronized void setIsbn(String isbn) {
+        long code = IsbnCodes.pack(isbn);
+        if (code != 0 ? code == isbnCode : isbnCode == 0 && Objects.equals(isbnText, isbn)) return;
+        BookListener l = beforeChange(BookField.ISBN);
+        storeIsbn(isbn);
+        afterChange(l, BookField.ISBN);
+    }
+
+    public synchronized void setPublishDate(LocalDate publishDate) {
+        long bits = dateBits(publishDate);
+        if ((dayAndFlags & ~BORROWED) == bits) return;
+        BookListener l = beforeChange(BookField.PUBLISH_DATE);
+        this.dayAndFlags = bits | (dayAndFlags & BORROWED);
+        afterChange(l, BookField.PUBLISH_DATE);
+    }
+
+    public synchronized void incrementBorrowCount() {
+        BookListener l = beforeChange(BookField.BORROW_COUNT);
+        this.borrowCount++;
+        afterChange(l, BookField.BORROW_COUNT);
+    }
+
+    public synchronized void setBorrowCount(int borrowCount) {
+        if (this.borrowCount == borrowCount) return;
+        BookListener l = beforeChange(BookField.BORROW_COUNT);
+        this.borrowCount = borrowCount;
+        afterChange(l, BookField.BORROW_COUNT);
+    }
+
+    // Unattached copy of the current state, e.g. a pre-image kept for a snapshot
+    synchronized Book detachedCopy() {
+        Book copy = new Book(title, author);
+        copy.isbnCode = isbnCode;
+        copy.isbnText = isbnText;
+        copy.dayAndFlags = dayAndFlags;
+        copy.borrowCount = borrowCount;
+        return copy;
+    }
+
+    // The packed form is written before the text is cleared (and the text before the
+    // packed form is cleared), so an unlocked getIsbn sees the old or the new value
+    private void storeIsbn(String isbn) {
+        long code = IsbnCodes.pack(isbn);
+        if (code != 0) {
+            isbnCode = code;
+            isbnText = null;
+        } else {
+            isbnText = isbn;
+            isbnCode = 0;
+        }
+    }
+
+    // Every LocalDate's epoch day (within +/-2^39) fits above the flag bits
+    private static long dateBits(LocalDate date) {
+        return date == null ? 0 : date.toEpochDay() << FLAG_BITS | DATED;
+    }
+
+    // Sort keys for title and author order. A key is checked against the current
+    // value before use, so one computed concurrently with a setter, even one stored
+    // after it, is never used for the new value; no lock is needed. Authors repeat
+    // across books, so their keys are shared.
+    CollationKeys.Key titleKey() {
+        String current = title;
+        CollationKeys.Key key = titleKey;
+        if (key == null || !key.isFor(current)) {
+            key = new CollationKeys.Key(current);
+            titleKey = key;
+        }
+        return key;
+    }
+
+    CollationKeys.Key authorKey() {
+        String current = author;
+        CollationKeys.Key key = authorKey;
+        if (key == null || !key.isFor(current)) {
+            key = CollationKeys.shared(current);
+            authorKey = key;
+        }
+        return key;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("title", title);
+        fields.put("author", author);
+        fields.put("isAvailable", isAvailable());
+        fields.put("isbn", getIsbn());
+        fields.put("publishDate", getPublishDate());
+        fields.put("borrowCount", getBorrowCount());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        title = StringPool.TITLES.intern((String) fields.get("title", null));
+        author = StringPool.AUTHORS.intern((String) fields.get("author", null));
+        storeIsbn((String) fields.get("isbn", null));
+        dayAndFlags = dateBits((LocalDate) fields.get("publishDate", null)) | (fields.get("isAvailable", true) ? 0 : BORROWED);
+        borrowCount = fields.get("borrowCount", 0);
+    }
+
+    // Change notification for the owning collection (package-private)
+    BookListener getListener() { return listener; }
+    void setListener(BookListener listener) { this.listener = listener; }
+
+    private BookListener beforeChange(BookField field) {
+        BookListener l = listener;
+        if (l != null) l.beforeChange(this, field);
+        return l;
+    }
+
+    private void afterChange(BookListener l, BookField field) {
+        if (l != null) l.afterChange(this, field);
     }
-    public void setIsbn(String isbn) { this.isbn = isbn; }
-    public void setPublishDate(LocalDate publishDate) { this.publishDate = publishDate; }
-    public synchronized void incrementBorrowCount() { this.borrowCount++; }
 
-    // Comparable implementation - natural ordering by title
+    // Comparable implementation - natural ordering by title, compared by collation key
     @Override
     public int compareTo(Book other) {
-        return this.title.compareToIgnoreCase(other.title);
+        return titleKey().compareTo(other.titleKey());
     }
 
     @Override
     public String toString() {
         return String.format("Book{title='%s', author='%s', available=%s, borrowCount=%d}", 
-                           title, author, isAvailable, borrowCount);
+                           title, author, isAvailable(), getBorrowCount());
     }
 }
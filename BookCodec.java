@@ -0,0 +1,139 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// Compact binary encoding of a single Book record, shared by the binary file formats
+public class BookCodec {
+    // Record layout (big-endian):
+    //   u16 titleLen, title bytes (UTF-8)
+    //   u16 authorLen, author bytes
+    //   u16 isbnLen, isbn bytes        (0xFFFF length = null)
+    //   int publishDate epoch day      (Integer.MIN_VALUE = null; MIN_VALUE + 1 = the
+    //                                   epoch day follows as a long, for dates outside int range)
+    //   u8  flags                      (bit 0 = available)
+    //   int borrowCount
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int MAX_STRING_BYTES = 0xFFFE;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int WIDE_DATE = Integer.MIN_VALUE + 1;
+    private static final int FLAG_AVAILABLE = 1;
+
+    // Write one book record
+    public static void write(DataOutput out, Book book) throws IOException {
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getIsbn());
+        writeDate(out, book.getPublishDate());
+        out.writeByte(book.isAvailable() ? FLAG_AVAILABLE : 0);
+        out.writeInt(book.getBorrowCount());
+    }
+
+    // Read one book record from a stream
+    public static Book read(DataInput in) throws IOException {
+        String title = readString(in);
+        String author = readString(in);
+        String isbn = readString(in);
+        int shortDay = in.readInt();
+        LocalDate date = shortDay == NO_DATE ? null
+                       : LocalDate.ofEpochDay(shortDay == WIDE_DATE ? in.readLong() : shortDay);
+        int flags = in.readUnsignedByte();
+        int borrowCount = in.readInt();
+        return toBook(title, author, isbn, date, flags, borrowCount);
+    }
+
+    // Read one book record at an absolute offset (does not move the buffer position)
+    public static Book read(ByteBuffer buf, int offset) {
+        String title = stringAt(buf, offset);
+        offset = skipString(buf, offset);
+        String author = stringAt(buf, offset);
+        offset = skipString(buf, offset);
+        String isbn = stringAt(buf, offset);
+        offset = skipString(buf, offset);
+        int shortDay = buf.getInt(offset);
+        offset += 4;
+        LocalDate date = null;
+        if (shortDay == WIDE_DATE) {
+            date = LocalDate.ofEpochDay(buf.getLong(offset));
+            offset += 8;
+        } else if (shortDay != NO_DATE) {
+            date = LocalDate.ofEpochDay(shortDay);
+        }
+        int flags = buf.get(offset) & 0xFF;
+        int borrowCount = buf.getInt(offset + 1);
+        return toBook(title, author, isbn, date, flags, borrowCount);
+    }
+
+    // Lightweight field views: decode one field of a record without building a Book
+    public static String titleAt(ByteBuffer buf, int offset) {
+        return stringAt(buf, offset);
+    }
+
+    public static String authorAt(ByteBuffer buf, int offset) {
+        return stringAt(buf, skipString(buf, offset));
+    }
+
+    public static String isbnAt(ByteBuffer buf, int offset) {
+        return stringAt(buf, skipString(buf, skipString(buf, offset)));
+    }
+
+    // Files written before wide dates existed only hold the int form, which still reads back
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        if (date == null) {
+            out.writeInt(NO_DATE);
+            return;
+        }
+        long epochDay = date.toEpochDay();
+        if (epochDay > WIDE_DATE && epochDay <= Integer.MAX_VALUE) {
+            out.writeInt((int) epochDay);
+        } else {
+            out.writeInt(WIDE_DATE);
+            out.writeLong(epochDay);
+        }
+    }
+
+    private static Book toBook(String title, String author, String isbn, LocalDate date, int flags, int borrowCount) {
+        Book book = new Book(title, author, isbn, date);
+        book.setAvailable((flags & FLAG_AVAILABLE) != 0);
+        book.setBorrowCount(borrowCount);
+        return book;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("Field too long for book record (" + bytes.length + " bytes)");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length == NULL_LENGTH) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String stringAt(ByteBuffer buf, int offset) {
+        int length = buf.getShort(offset) & 0xFFFF;
+        if (length == NULL_LENGTH) return null;
+        byte[] bytes = new byte[length];
+        buf.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipString(ByteBuffer buf, int offset) {
+        int length = buf.getShort(offset) & 0xFFFF;
+        return offset + 2 + (length == NULL_LENGTH ? 0 : length);
+    }
+}
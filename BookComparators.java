@@ -4,11 +4,11 @@ import java.util.Comparator;
 
 public class BookComparators {
     
-    // Comparator for sorting by author
+    // Comparator for sorting by author, compared by collation key
     public static class AuthorComparator implements Comparator<Book> {
         @Override
         public int compare(Book b1, Book b2) {
-            return b1.getAuthor().compareToIgnoreCase(b2.getAuthor());
+            return b1.authorKey().compareTo(b2.authorKey());
         }
     }
 
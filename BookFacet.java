@@ -0,0 +1,9 @@
+package library;
+
+// Dimensions a search result can be broken down by (see LibraryCollection.facets)
+public enum BookFacet {
+    AUTHOR,        // exact author name
+    DECADE,        // decade of the publish date, e.g. "1990s"; "undated" if none
+    AVAILABILITY,  // "available" or "borrowed"
+    POPULARITY     // borrow count band, see FacetCounts.POPULARITY_BANDS
+}
@@ -0,0 +1,11 @@
+package library;
+
+// Mutable Book properties, reported to a BookListener when they change
+public enum BookField {
+    TITLE,
+    AUTHOR,
+    ISBN,
+    PUBLISH_DATE,
+    AVAILABILITY,
+    BORROW_COUNT
+}
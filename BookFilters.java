@@ -2,8 +2,10 @@ package library;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 // Demonstrates Lambda Expressions and Functional Programming
 public class BookFilters {
@@ -38,11 +40,108 @@ public class BookFilters {
     public static final BiFunction<Book, Book, Integer> COMPARE_BY_POPULARITY = 
         (b1, b2) -> Integer.compare(b2.getBorrowCount(), b1.getBorrowCount());
 
+    // Lists smaller than this are never worth calibrating for
+    private static final int MIN_PARALLEL_SIZE = 4096;
+    private static final int WARMUP_RUNS = 10;
+    private static final int TIMED_RUNS = 5;
+    private static volatile int parallelThreshold = -1;  // -1 = not calibrated yet
+    private static Thread calibration;
+
+    /**
+     * Sequential stream for small lists, parallel stream once the list reaches
+     * the calibrated threshold
+     */
+    private static Stream<Book> stream(List<Book> books) {
+        return isParallel(books) ? books.parallelStream() : books.stream();
+    }
+
+    private static boolean isParallel(List<Book> books) {
+        return books.size() >= MIN_PARALLEL_SIZE && books.size() >= getParallelThreshold();
+    }
+
+    /**
+     * List size from which operations run in parallel. Taken from the
+     * library.parallelThreshold system property if set, otherwise measured by
+     * calibrateInBackground; until that finishes everything runs sequentially.
+     */
+    public static int getParallelThreshold() {
+        int threshold = parallelThreshold;
+        if (threshold >= 0) return threshold;
+        calibrateInBackground();  // no-op once started
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Measure the threshold on a daemon thread, so no caller waits for it. Called
+     * at startup; later calls do nothing.
+     */
+    public static synchronized void calibrateInBackground() {
+        if (calibration != null || parallelThreshold >= 0) return;
+        int configured = Integer.getInteger("library.parallelThreshold", -1);
+        if (configured >= 0) {
+            parallelThreshold = configured;
+            return;
+        }
+        calibration = new Thread(() -> {
+            int measured = calibrateParallelThreshold();
+            synchronized (BookFilters.class) {
+                if (parallelThreshold < 0) parallelThreshold = measured;  // unless set meanwhile
+            }
+        }, "parallel-calibration");
+        calibration.setDaemon(true);
+        calibration.setPriority(Thread.MIN_PRIORITY);
+        calibration.start();
+    }
+
+    /**
+     * Override the threshold; Integer.MAX_VALUE keeps everything sequential
+     */
+    public static synchronized void setParallelThreshold(int threshold) {
+        parallelThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Smallest size where a parallel filter clearly beats a sequential one on this
+     * machine, or Integer.MAX_VALUE if it never does (e.g. a single core). Both
+     * are run until compiled before they are timed; the sample books bypass
+     * StringPool so calibration leaves nothing behind in the pools.
+     */
+    private static int calibrateParallelThreshold() {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2) return Integer.MAX_VALUE;
+        int largest = 1 << 17;
+        List<Book> sample = new ArrayList<>(largest);
+        for (int i = 0; i < largest; i++) {
+            Book book = Book.unpooled("Calibration " + i, "Author " + (i % 512));
+            book.setBorrowCount(i % 11);
+            sample.add(book);
+        }
+        Predicate<Book> filter = book -> book.getBorrowCount() > 5 && book.getAuthor().endsWith("7");
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            sample.stream().filter(filter).count();
+            sample.parallelStream().filter(filter).count();
+        }
+        for (int size = MIN_PARALLEL_SIZE; size <= largest; size *= 4) {
+            List<Book> books = sample.subList(0, size);
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            for (int run = 0; run < TIMED_RUNS; run++) {
+                long start = System.nanoTime();
+                books.stream().filter(filter).count();
+                sequential = Math.min(sequential, System.nanoTime() - start);
+                start = System.nanoTime();
+                books.parallelStream().filter(filter).count();
+                parallel = Math.min(parallel, System.nanoTime() - start);
+            }
+            if (parallel * 10 < sequential * 8) return size;  // at least 20% faster
+        }
+        return Integer.MAX_VALUE;
+    }
+
     /**
      * Filter books using a predicate (Lambda)
      */
     public static List<Book> filterBooks(List<Book> books, Predicate<Book> predicate) {
-        return books.stream()
+        return stream(books)
                    .filter(predicate)
                    .collect(Collectors.toList());
     }
@@ -51,7 +150,7 @@ public class BookFilters {
      * Transform books using a function (Lambda)
      */
     public static List<String> transformBooks(List<Book> books, Function<Book, String> transformer) {
-        return books.stream()
+        return stream(books)
                    .map(transformer)
                    .collect(Collectors.toList());
     }
@@ -67,7 +166,7 @@ public class BookFilters {
      * Find books by author using lambda
      */
     public static List<Book> findByAuthor(List<Book> books, String author) {
-        return books.stream()
+        return stream(books)
                    .filter(book -> book.getAuthor().equalsIgnoreCase(author))
                    .collect(Collectors.toList());
     }
@@ -76,26 +175,51 @@ public class BookFilters {
      * Find books published after a certain date using lambda
      */
     public static List<Book> findBooksAfter(List<Book> books, LocalDate date) {
-        return books.stream()
+        return stream(books)
                    .filter(book -> book.getPublishDate() != null && book.getPublishDate().isAfter(date))
                    .collect(Collectors.toList());
     }
 
+    /**
+     * Books published after a date, from the collection's publish date index (no full scan)
+     */
+    public static List<Book> findBooksAfter(LibraryCollection<? extends Book> library, LocalDate date) {
+        return new ArrayList<>(library.publishedAfter(date));
+    }
+
     /**
      * Get top N most borrowed books using lambda
      */
     public static List<Book> getTopBorrowed(List<Book> books, int n) {
-        return books.stream()
+        return stream(books)
                    .sorted((b1, b2) -> Integer.compare(b2.getBorrowCount(), b1.getBorrowCount()))
                    .limit(n)
                    .collect(Collectors.toList());
     }
 
+    /**
+     * Top N most borrowed books of a collection, from the borrow count index; cached
+     * until a borrow count changes or a book is added
+     */
+    public static List<Book> getTopBorrowed(LibraryCollection<? extends Book> library, int n) {
+        if (n <= 0) return Collections.emptyList();
+        return library.cached("topBorrowed:" + n, EnumSet.of(BookField.BORROW_COUNT), () ->
+            Collections.unmodifiableList(new ArrayList<Book>(library.page(BookOrder.POPULARITY, null, n).getBooks())));
+    }
+
+    /**
+     * Available books of a collection; cached until availability changes or a book is added
+     */
+    public static List<Book> getAvailableBooks(LibraryCollection<? extends Book> library) {
+        return library.cached("available", EnumSet.of(BookField.AVAILABILITY), () ->
+            Collections.unmodifiableList(new ArrayList<Book>(library.getAvailableBooks())));
+    }
+
     /**
      * Count books matching a condition using lambda
      */
     public static long countBooks(List<Book> books, Predicate<Book> condition) {
-        return books.stream()
+        return stream(books)
                    .filter(condition)
                    .count();
     }
@@ -104,38 +228,92 @@ public class BookFilters {
      * Check if any book matches condition using lambda
      */
     public static boolean anyMatch(List<Book> books, Predicate<Book> condition) {
-        return books.stream().anyMatch(condition);
+        return stream(books).anyMatch(condition);
     }
 
     /**
      * Check if all books match condition using lambda
      */
     public static boolean allMatch(List<Book> books, Predicate<Book> condition) {
-        return books.stream().allMatch(condition);
+        return stream(books).allMatch(condition);
+    }
+
+    /**
+     * Lazy stream of a collection's books matching a condition; nothing is copied and
+     * short-circuiting operations stop early (see LibraryCollection.stream)
+     */
+    public static Stream<Book> streamBooks(LibraryCollection<? extends Book> library, Predicate<? super Book> condition) {
+        return library.stream().<Book>map(book -> book).filter(condition);
+    }
+
+    /**
+     * First limit matching books of a collection, scanning only as far as needed
+     */
+    public static List<Book> firstMatches(LibraryCollection<? extends Book> library, Predicate<? super Book> condition, int limit) {
+        return streamBooks(library, condition).limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * Count a collection's books matching a condition without copying the catalog
+     */
+    public static long countBooks(LibraryCollection<? extends Book> library, Predicate<? super Book> condition) {
+        return streamBooks(library, condition).count();
+    }
+
+    /**
+     * Check if any book of a collection matches, stopping at the first match
+     */
+    public static boolean anyMatch(LibraryCollection<? extends Book> library, Predicate<? super Book> condition) {
+        return library.stream().anyMatch(condition);
     }
 
     /**
      * Group books by author using lambda
      */
     public static Map<String, List<Book>> groupByAuthor(List<Book> books) {
-        return books.stream()
+        if (isParallel(books)) {
+            // One shared concurrent map instead of per-thread maps merged at the end;
+            // books within an author's list are then not in input order
+            return stream(books).collect(Collectors.groupingByConcurrent(Book::getAuthor));
+        }
+        return stream(books)
                    .collect(Collectors.groupingBy(Book::getAuthor));
     }
 
+    /**
+     * Books of a collection grouped by author; cached until an author changes or a book is added
+     */
+    public static Map<String, List<Book>> groupByAuthor(LibraryCollection<? extends Book> library) {
+        return library.cached("groupByAuthor", EnumSet.of(BookField.AUTHOR), () -> {
+            Map<String, List<Book>> groups = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Book>> group : groupByAuthor(new ArrayList<Book>(library.getAllBooks())).entrySet()) {
+                groups.put(group.getKey(), Collections.unmodifiableList(group.getValue()));
+            }
+            return Collections.unmodifiableMap(groups);
+        });
+    }
+
     /**
      * Get statistics about borrow counts using lambda
      */
     public static IntSummaryStatistics getBorrowStatistics(List<Book> books) {
-        return books.stream()
+        return stream(books)
                    .mapToInt(Book::getBorrowCount)
                    .summaryStatistics();
     }
 
+    /**
+     * Borrow statistics for a whole collection, from its running totals (no scan)
+     */
+    public static IntSummaryStatistics getBorrowStatistics(LibraryCollection<? extends Book> library) {
+        return library.getStatistics().toIntSummaryStatistics();
+    }
+
     /**
      * Find book with maximum borrow count using lambda
      */
     public static Optional<Book> getMostBorrowed(List<Book> books) {
-        return books.stream()
+        return stream(books)
                    .max(Comparator.comparingInt(Book::getBorrowCount));
     }
 
@@ -143,7 +321,7 @@ public class BookFilters {
      * Search books by title pattern (case-insensitive) using lambda
      */
     public static List<Book> searchByTitle(List<Book> books, String searchTerm) {
-        return books.stream()
+        return stream(books)
                    .filter(book -> book.getTitle().toLowerCase().contains(searchTerm.toLowerCase()))
                    .collect(Collectors.toList());
     }
@@ -169,11 +347,26 @@ public class BookFilters {
         return filter;
     }
 
+    /**
+     * Same filter as buildFilter, as a query spec that LibraryCollection.query can
+     * answer from an index instead of a full scan
+     */
+    public static BookQuery buildQuery(boolean availableOnly, Integer minBorrowCount, String authorContains) {
+        BookQuery query = new BookQuery().authorContains(authorContains);
+        if (availableOnly) {
+            query.available(true);
+        }
+        if (minBorrowCount != null) {
+            query.minBorrowCount(minBorrowCount);
+        }
+        return query;
+    }
+
     /**
      * Sort books using custom lambda comparator
      */
     public static List<Book> sortBooks(List<Book> books, Comparator<Book> comparator) {
-        return books.stream()
+        return stream(books)
                    .sorted(comparator)
                    .collect(Collectors.toList());
     }
@@ -182,7 +375,7 @@ public class BookFilters {
      * Get unique authors using lambda
      */
     public static Set<String> getUniqueAuthors(List<Book> books) {
-        return books.stream()
+        return stream(books)
                    .map(Book::getAuthor)
                    .collect(Collectors.toSet());
     }
@@ -191,16 +384,23 @@ public class BookFilters {
      * Calculate total borrow count using lambda
      */
     public static int getTotalBorrowCount(List<Book> books) {
-        return books.stream()
+        return stream(books)
                    .mapToInt(Book::getBorrowCount)
                    .sum();
     }
 
+    /**
+     * Total borrow count of a whole collection, from its running totals (no scan)
+     */
+    public static long getTotalBorrowCount(LibraryCollection<? extends Book> library) {
+        return library.getStatistics().getTotalBorrowCount();
+    }
+
     /**
      * Partition books into available and borrowed using lambda
      */
     public static Map<Boolean, List<Book>> partitionByAvailability(List<Book> books) {
-        return books.stream()
+        return stream(books)
                    .collect(Collectors.partitioningBy(Book::isAvailable));
     }
 }
@@ -0,0 +1,332 @@
+package library;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Secondary indexes over an in-heap store, used by QueryPlanner, for paging in
+// index order, for fuzzy title search and for title and author completion.
+// Author and availability buckets are identity sets; the ordered indexes keep each
+// bucket sorted by insertion position, so (key, position) is a unique, resumable
+// cursor. Not thread-safe: maintained under LibraryCollection's write lock, read
+// under its read lock.
+public class BookIndexes<T extends Book> {
+    private final Map<String, Set<T>> byAuthor = new HashMap<>();          // lower-cased author
+    private final Set<T> borrowed = identitySet();
+    private final TreeMap<Integer, TreeMap<Integer, T>> byBorrowCount = new TreeMap<>();
+    private final PublishDateIndex<T> byPublishDate = new PublishDateIndex<>();
+    private final TreeMap<Integer, T> undated = new TreeMap<>();
+    private final FuzzyTitleIndex<T> titles = new FuzzyTitleIndex<>();
+    private final CompletionIndex titleCompletions = new CompletionIndex();
+    private final CompletionIndex authorCompletions = new CompletionIndex();
+    private int borrowCountBefore;  // of the book whose borrow count is changing
+
+    void add(T book) {
+        for (BookField field : INDEXED) {
+            add(book, field);
+        }
+    }
+
+    // Take the book out of the index for a field that is about to change
+    void beforeChange(T book, BookField field) {
+        if (field == BookField.BORROW_COUNT) borrowCountBefore = book.getBorrowCount();
+        remove(book, field);
+    }
+
+    void afterChange(T book, BookField field) {
+        add(book, field);
+        if (field == BookField.BORROW_COUNT) {
+            int delta = book.getBorrowCount() - borrowCountBefore;
+            titleCompletions.adjust(book.getTitle(), delta);
+            authorCompletions.adjust(book.getAuthor(), delta);
+        }
+    }
+
+    private static final BookField[] INDEXED = {
+        BookField.TITLE, BookField.AUTHOR, BookField.AVAILABILITY, BookField.BORROW_COUNT, BookField.PUBLISH_DATE
+    };
+
+    private void add(T book, BookField field) {
+        switch (field) {
+            case TITLE:
+                titles.add(book);
+                titleCompletions.add(book.getTitle(), book.getBorrowCount());
+                break;
+            case AUTHOR:
+                byAuthor.computeIfAbsent(authorKey(book), k -> identitySet()).add(book);
+                authorCompletions.add(book.getAuthor(), book.getBorrowCount());
+                break;
+            case AVAILABILITY:
+                if (!book.isAvailable()) borrowed.add(book);
+                break;
+            case BORROW_COUNT:
+                byBorrowCount.computeIfAbsent(book.getBorrowCount(), k -> new TreeMap<>())
+                             .put(book.storePosition, book);
+                break;
+            case PUBLISH_DATE:
+                if (book.getPublishDate() != null) {
+                    byPublishDate.add(book);
+                } else {
+                    undated.put(book.storePosition, book);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void remove(T book, BookField field) {
+        switch (field) {
+            case TITLE:
+                titles.remove(book);
+                titleCompletions.remove(book.getTitle(), book.getBorrowCount());
+                break;
+            case AUTHOR:
+                Set<T> bucket = byAuthor.get(authorKey(book));
+                if (bucket != null && bucket.remove(book) && bucket.isEmpty()) {
+                    byAuthor.remove(authorKey(book));
+                }
+                authorCompletions.remove(book.getAuthor(), book.getBorrowCount());
+                break;
+            case AVAILABILITY:
+                borrowed.remove(book);
+                break;
+            case BORROW_COUNT:
+                removeFrom(byBorrowCount, book.getBorrowCount(), book);
+                break;
+            case PUBLISH_DATE:
+                if (book.getPublishDate() != null) {
+                    byPublishDate.remove(book);
+                } else {
+                    undated.remove(book.storePosition);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // ---------- access paths for the planner ----------
+
+    // Buckets of every author containing the text
+    List<Set<T>> authorsContaining(String text) {
+        List<Set<T>> buckets = new ArrayList<>();
+        for (Map.Entry<String, Set<T>> entry : byAuthor.entrySet()) {
+            if (entry.getKey().contains(text)) buckets.add(entry.getValue());
+        }
+        return buckets;
+    }
+
+    FuzzyTitleIndex<T> titles() {
+        return titles;
+    }
+
+    CompletionIndex titleCompletions() {
+        return titleCompletions;
+    }
+
+    CompletionIndex authorCompletions() {
+        return authorCompletions;
+    }
+
+    Set<T> borrowed() {
+        return borrowed;
+    }
+
+    List<Collection<T>> borrowCountBetween(Integer min, Integer max) {
+        NavigableMap<Integer, TreeMap<Integer, T>> range = byBorrowCount;
+        if (min != null) range = range.tailMap(min, true);
+        if (max != null) range = range.headMap(max, true);
+        return values(range.values());
+    }
+
+    // Either end may be null (open); dated books only
+    List<Collection<T>> publishedBetween(LocalDate from, LocalDate to) {
+        return byPublishDate.between(from, to);
+    }
+
+    PublishDateIndex<T> publishDates() {
+        return byPublishDate;
+    }
+
+    int undatedCount() {
+        return undated.size();
+    }
+
+    // Dated books in [from, to], oldest first
+    void forEachPublishedBetween(LocalDate from, LocalDate to, Consumer<? super T> action) {
+        byPublishDate.forEachBetween(from, to, action);
+    }
+
+    // Total size of a set of buckets, counting no further than cap
+    static long countUpTo(Collection<? extends Collection<?>> buckets, long cap) {
+        long total = 0;
+        for (Collection<?> bucket : buckets) {
+            total += bucket.size();
+            if (total >= cap) return cap;
+        }
+        return total;
+    }
+
+    // ---------- paging in index order ----------
+
+    // Cursor formats: POPULARITY "borrowCount:position", PUBLISH_DATE "epochDay:position"
+    // or "-:position" for an undated book
+    static String cursorOf(BookOrder order, Book book) {
+        if (order == BookOrder.POPULARITY) {
+            return book.getBorrowCount() + ":" + book.storePosition;
+        }
+        LocalDate date = book.getPublishDate();
+        return (date != null ? String.valueOf(date.toEpochDay()) : "-") + ":" + book.storePosition;
+    }
+
+    // Most borrowed first, ties in insertion order
+    List<T> scanByPopularity(String cursor, int limit) {
+        NavigableMap<Integer, TreeMap<Integer, T>> counts = byBorrowCount.descendingMap();
+        int afterPosition = -1;
+        Integer firstCount = null;
+        if (cursor != null) {
+            String[] parts = splitCursor(cursor);
+            firstCount = parseInt(parts[0]);
+            afterPosition = parseInt(parts[1]);
+            counts = counts.tailMap(firstCount, true);
+        }
+        List<T> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Map.Entry<Integer, TreeMap<Integer, T>> entry : counts.entrySet()) {
+            NavigableMap<Integer, T> bucket = entry.getValue();
+            if (entry.getKey().equals(firstCount)) bucket = bucket.tailMap(afterPosition, false);
+            if (!fill(page, bucket.values(), limit)) break;
+        }
+        return page;
+    }
+
+    // Oldest first, undated books last
+    List<T> scanByPublishDate(String cursor, int limit) {
+        List<T> page;
+        NavigableMap<Integer, T> undatedTail = undated;
+        if (cursor == null) {
+            page = byPublishDate.scan(Long.MIN_VALUE, Integer.MIN_VALUE, limit);
+        } else {
+            String[] parts = splitCursor(cursor);
+            int afterPosition = parseInt(parts[1]);
+            if (parts[0].equals("-")) {
+                page = new ArrayList<>(Math.min(limit, 1024));
+                undatedTail = undated.tailMap(afterPosition, false);
+            } else {
+                page = byPublishDate.scan(parseLong(parts[0]), afterPosition + 1, limit);
+            }
+        }
+        fill(page, undatedTail.values(), limit);
+        return page;
+    }
+
+    // Append until the page is full; false once it is
+    private static <T> boolean fill(List<T> page, Collection<T> books, int limit) {
+        for (T book : books) {
+            if (page.size() == limit) return false;
+            page.add(book);
+        }
+        return page.size() < limit;
+    }
+
+    private static String[] splitCursor(String cursor) {
+        String[] parts = cursor.split(":");
+        if (parts.length != 2) throw new IllegalArgumentException("Invalid page token");
+        return parts;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+
+    // ---------- paging without indexes ----------
+
+    // The same orders for stores that keep no indexes (BookStore's defaults): each page
+    // is one full pass keeping the first limit books after the cursor in a bounded
+    // heap, O(n log limit) time and O(limit) memory. Ties are broken by storeKey, which
+    // such stores (LsmBookStore) set on every book; cursors are "borrowCount:storeKey",
+    // "epochDay:storeKey" or "-:storeKey".
+    static String unindexedCursorOf(BookOrder order, Book book) {
+        if (order == BookOrder.POPULARITY) return book.getBorrowCount() + ":" + book.storeKey;
+        LocalDate date = book.getPublishDate();
+        return (date != null ? String.valueOf(date.toEpochDay()) : "-") + ":" + book.storeKey;
+    }
+
+    static <T extends Book> List<T> scanUnindexed(BookStore<T> store, BookOrder order, String cursor, int limit) {
+        Comparator<Book> comparator = Comparator.<Book>comparingLong(book -> sortValue(order, book))
+                                                .thenComparing(book -> book.storeKey);
+        long afterValue;
+        String afterKey;
+        if (cursor == null) {
+            afterValue = Long.MIN_VALUE;
+            afterKey = null;
+        } else {
+            int colon = cursor.indexOf(':');
+            if (colon < 0) throw new IllegalArgumentException("Invalid page token");
+            String value = cursor.substring(0, colon);
+            afterKey = cursor.substring(colon + 1);
+            afterValue = order == BookOrder.POPULARITY ? -parseLong(value)
+                       : value.equals("-") ? Long.MAX_VALUE : parseLong(value);
+        }
+        PriorityQueue<T> kept = new PriorityQueue<>(comparator.reversed());  // the last one kept on top
+        store.forEach(book -> {
+            if (afterKey != null) {
+                int cmp = Long.compare(sortValue(order, book), afterValue);
+                if (cmp < 0 || cmp == 0 && book.storeKey.compareTo(afterKey) <= 0) return;
+            }
+            if (kept.size() < limit) {
+                kept.add(book);
+            } else if (comparator.compare(book, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(book);
+            }
+        });
+        List<T> page = new ArrayList<>(kept);
+        page.sort(comparator);
+        return page;
+    }
+
+    // Ascending in page order: most borrowed first, or oldest first with undated books last
+    private static long sortValue(BookOrder order, Book book) {
+        if (order == BookOrder.POPULARITY) return -(long) book.getBorrowCount();
+        LocalDate date = book.getPublishDate();
+        return date != null ? date.toEpochDay() : Long.MAX_VALUE;
+    }
+
+    // ---------- helpers ----------
+
+    private static String authorKey(Book book) {
+        return book.getAuthor() == null ? "" : book.getAuthor().toLowerCase();
+    }
+
+    private static <K, V extends Book> void removeFrom(Map<K, TreeMap<Integer, V>> index, K key, V book) {
+        TreeMap<Integer, V> bucket = index.get(key);
+        if (bucket != null && bucket.remove(book.storePosition) != null && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static <T> List<Collection<T>> values(Collection<TreeMap<Integer, T>> buckets) {
+        List<Collection<T>> values = new ArrayList<>(buckets.size());
+        for (TreeMap<Integer, T> bucket : buckets) {
+            values.add(bucket.values());
+        }
+        return values;
+    }
+
+    private static <V> Set<V> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
@@ -0,0 +1,10 @@
+package library;
+
+// Notified around in-place modifications of a Book, so the collection that owns
+// the book can keep its storage and indexes in step. Both calls are made while
+// the book's monitor is held; afterChange always follows a beforeChange.
+public interface BookListener {
+    void beforeChange(Book book, BookField field);
+
+    void afterChange(Book book, BookField field);
+}
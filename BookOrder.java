@@ -0,0 +1,9 @@
+package library;
+
+// Orders in which LibraryCollection.page can list books without sorting the catalog
+public enum BookOrder {
+    STORAGE,       // the store's own order (insertion order for the in-heap store)
+    ISBN,          // ascending ISBN; books without an ISBN are not listed
+    POPULARITY,    // most borrowed first, ties in insertion order
+    PUBLISH_DATE   // oldest first, books without a date last
+}
@@ -0,0 +1,34 @@
+package library;
+
+import java.util.*;
+
+// One page of a listing plus the token that continues it. Tokens are opaque
+// strings; pass one back to get the page that follows.
+public class BookPage<T extends Book> {
+    private final List<T> books;
+    private final String nextToken;
+
+    BookPage(List<T> books, String nextToken) {
+        this.books = books;
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getBooks() { return books; }
+    public String getNextToken() { return nextToken; }  // null on the last page
+    public boolean hasNext() { return nextToken != null; }
+
+    // Page through a list that is already in memory, e.g. a sorted copy
+    public static <T extends Book> BookPage<T> of(List<T> list, String token, int pageSize) {
+        int from = 0;
+        if (token != null) {
+            try {
+                from = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+        int to = Math.min(list.size(), from + pageSize);
+        return new BookPage<>(new ArrayList<>(list.subList(Math.min(from, to), to)),
+                              to < list.size() ? String.valueOf(to) : null);
+    }
+}
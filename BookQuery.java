@@ -0,0 +1,239 @@
+package library;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+
+// Filter spec for LibraryCollection.query. Unset conditions match everything.
+// QueryPlanner turns a spec into a plan that starts from the most selective index.
+// Specs can also be parsed from text, see QueryLanguage.
+public class BookQuery {
+    private Boolean available;
+    private Integer minBorrowCount;
+    private Integer maxBorrowCount;
+    private String authorContains;
+    private String titleContains;
+    private LocalDate publishedFrom;
+    private LocalDate publishedTo;
+    private Predicate<Book> compiled;  // built on first use, dropped when the spec changes
+
+    public BookQuery available(boolean available) {
+        this.available = available;
+        compiled = null;
+        return this;
+    }
+
+    public BookQuery minBorrowCount(int minBorrowCount) {
+        this.minBorrowCount = minBorrowCount;
+        compiled = null;
+        return this;
+    }
+
+    public BookQuery maxBorrowCount(int maxBorrowCount) {
+        this.maxBorrowCount = maxBorrowCount;
+        compiled = null;
+        return this;
+    }
+
+    // Case-insensitive substring of the author
+    public BookQuery authorContains(String text) {
+        this.authorContains = text == null || text.isEmpty() ? null : text.toLowerCase();
+        compiled = null;
+        return this;
+    }
+
+    // Case-insensitive substring of the title
+    public BookQuery titleContains(String text) {
+        this.titleContains = text == null || text.isEmpty() ? null : text.toLowerCase();
+        compiled = null;
+        return this;
+    }
+
+    // Inclusive publish date range; either end may be null (open)
+    public BookQuery publishedBetween(LocalDate from, LocalDate to) {
+        this.publishedFrom = from;
+        this.publishedTo = to;
+        compiled = null;
+        return this;
+    }
+
+    public Boolean getAvailable() { return available; }
+    public Integer getMinBorrowCount() { return minBorrowCount; }
+    public Integer getMaxBorrowCount() { return maxBorrowCount; }
+    public String getAuthorContains() { return authorContains; }
+    public String getTitleContains() { return titleContains; }
+    public LocalDate getPublishedFrom() { return publishedFrom; }
+    public LocalDate getPublishedTo() { return publishedTo; }
+
+    public boolean hasDateRange() {
+        return publishedFrom != null || publishedTo != null;
+    }
+
+    public boolean hasBorrowRange() {
+        return minBorrowCount != null || maxBorrowCount != null;
+    }
+
+    // Same semantics as BookFilters.buildFilter, plus the title, date and upper borrow
+    // conditions. Compiled once into a flat tree of specialized checks, cheapest first,
+    // instead of a chain of and() lambdas.
+    public Predicate<Book> toPredicate() {
+        Predicate<Book> predicate = compiled;
+        if (predicate == null) {
+            predicate = compile();
+            compiled = predicate;
+        }
+        return predicate;
+    }
+
+    private Predicate<Book> compile() {
+        List<Predicate<Book>> checks = new ArrayList<>();
+        if (available != null) {
+            checks.add(available ? BookFilters.IS_AVAILABLE : BookFilters.IS_BORROWED);
+        }
+        if (hasBorrowRange()) {
+            checks.add(new BorrowCountBetween(minBorrowCount != null ? minBorrowCount : Integer.MIN_VALUE,
+                                              maxBorrowCount != null ? maxBorrowCount : Integer.MAX_VALUE));
+        }
+        if (hasDateRange()) {
+            checks.add(new PublishedBetween(publishedFrom != null ? publishedFrom.toEpochDay() : Long.MIN_VALUE,
+                                            publishedTo != null ? publishedTo.toEpochDay() : Long.MAX_VALUE));
+        }
+        if (authorContains != null) {
+            checks.add(new AuthorContains(authorContains));
+        }
+        if (titleContains != null) {
+            checks.add(new TitleContains(titleContains));
+        }
+        switch (checks.size()) {
+            case 0:
+                return book -> true;
+            case 1:
+                return checks.get(0);
+            default:
+                return new AllOf(checks);
+        }
+    }
+
+    // True when the query has no conditions at all
+    boolean matchesAll() {
+        return available == null && !hasBorrowRange() && !hasDateRange()
+               && authorContains == null && titleContains == null;
+    }
+
+    // Human-readable conditions, used by explain()
+    List<String> describe() {
+        List<String> conditions = new ArrayList<>();
+        if (available != null) conditions.add(available ? "available" : "borrowed");
+        if (minBorrowCount != null) conditions.add("borrowCount >= " + minBorrowCount);
+        if (maxBorrowCount != null) conditions.add("borrowCount <= " + maxBorrowCount);
+        if (authorContains != null) conditions.add("author contains \"" + authorContains + "\"");
+        if (titleContains != null) conditions.add("title contains \"" + titleContains + "\"");
+        if (hasDateRange()) {
+            conditions.add("publishDate in [" + (publishedFrom != null ? publishedFrom : "-inf") + ", "
+                           + (publishedTo != null ? publishedTo : "+inf") + "]");
+        }
+        return conditions;
+    }
+
+    @Override
+    public String toString() {
+        List<String> conditions = describe();
+        return conditions.isEmpty() ? "all books" : String.join(" AND ", conditions);
+    }
+
+    // ---------- compiled checks ----------
+
+    private static final class AllOf implements Predicate<Book> {
+        private final Predicate<Book>[] checks;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        AllOf(List<Predicate<Book>> checks) {
+            this.checks = checks.toArray(new Predicate[0]);
+        }
+
+        @Override
+        public boolean test(Book book) {
+            for (Predicate<Book> check : checks) {
+                if (!check.test(book)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class BorrowCountBetween implements Predicate<Book> {
+        private final int min;
+        private final int max;
+
+        BorrowCountBetween(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            int count = book.getBorrowCount();
+            return count >= min && count <= max;
+        }
+    }
+
+    private static final class PublishedBetween implements Predicate<Book> {
+        private final long fromDay;
+        private final long toDay;
+
+        PublishedBetween(long fromDay, long toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            LocalDate date = book.getPublishDate();
+            if (date == null) return false;
+            long day = date.toEpochDay();
+            return day >= fromDay && day <= toDay;
+        }
+    }
+
+    private static final class AuthorContains implements Predicate<Book> {
+        private final String text;
+
+        AuthorContains(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            return containsIgnoreCase(book.getAuthor(), text);
+        }
+    }
+
+    private static final class TitleContains implements Predicate<Book> {
+        private final String text;
+
+        TitleContains(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            return containsIgnoreCase(book.getTitle(), text);
+        }
+    }
+
+    // Substring test against lower-cased text without allocating a lower-cased copy
+    static boolean containsIgnoreCase(String value, String lowerText) {
+        if (value == null) return false;
+        int length = lowerText.length();
+        if (length == 0) return true;
+        char first = lowerText.charAt(0);
+        int last = value.length() - length;
+        for (int i = 0; i <= last; i++) {
+            char c = value.charAt(i);
+            if ((c == first || Character.toLowerCase(c) == first)
+                    && value.regionMatches(true, i + 1, lowerText, 1, length - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package library;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Storage behind LibraryCollection. Implementations are not thread-safe on their
+// own: LibraryCollection calls reads under its read lock and writes under its
+// write lock.
+public interface BookStore<T extends Book> extends Closeable {
+    void add(T book);
+
+    default void addAll(Collection<? extends T> books) {
+        for (T book : books) {
+            add(book);
+        }
+    }
+
+    // Bracket an in-place modification of a stored book
+    void beforeChange(T book, BookField field);
+
+    void afterChange(T book, BookField field);
+
+    Optional<T> findByIsbn(String isbn);
+
+    // Up to limit books whose ISBN is strictly greater than afterIsbn (null = from the start),
+    // in ISBN order; books without an ISBN are not included
+    List<T> scanByIsbn(String afterIsbn, int limit);
+
+    // Up to limit books in the given order, after the book the cursor was taken
+    // from (null = from the start). The default supports every order but storage
+    // order; popularity and publish date orders cost a full scan per call, keyed on
+    // storeKey (see BookIndexes.scanUnindexed).
+    default List<T> scan(BookOrder order, String cursor, int limit) {
+        switch (order) {
+            case ISBN:
+                return scanByIsbn(cursor, limit);
+            case POPULARITY:
+            case PUBLISH_DATE:
+                return BookIndexes.scanUnindexed(this, order, cursor, limit);
+            default:
+                throw new UnsupportedOperationException(order + " order is not supported by " + getClass().getSimpleName());
+        }
+    }
+
+    // Cursor for resuming a scan in the given order after this book
+    default String cursorOf(BookOrder order, T book) {
+        switch (order) {
+            case ISBN:
+                return book.getIsbn();
+            case POPULARITY:
+            case PUBLISH_DATE:
+                return BookIndexes.unindexedCursorOf(order, book);
+            default:
+                throw new UnsupportedOperationException(order + " order is not supported by " + getClass().getSimpleName());
+        }
+    }
+
+    // Visit every book in storage order
+    void forEach(Consumer<? super T> action);
+
+    int size();
+
+    // Secondary indexes for QueryPlanner, or null if the store keeps none
+    default BookIndexes<T> indexes() {
+        return null;
+    }
+
+    // The books stored right now, as a list that later adds do not affect. Called under
+    // the write lock and then read without it, possibly from another thread. Stored
+    // books may still change in place; LibraryCollection keeps pre-images for those.
+    default List<T> frozenView() {
+        List<T> copy = new ArrayList<>(size());
+        forEach(copy::add);
+        return copy;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
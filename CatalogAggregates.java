@@ -0,0 +1,153 @@
+package library;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// Running totals over every book in a LibraryCollection, kept up to date on each
+// add and change so statistics never need a scan. A change to a field the totals
+// depend on takes the book's old contribution out before the change and puts the
+// new one back afterwards.
+//
+// Min and max borrow counts come from a histogram of borrow counts: a dense array
+// for the usual small values, a TreeMap for the rest. When the last book at the
+// current min or max moves, the next occupied slot is found by walking the array,
+// which is short in practice since a borrow moves a book by one.
+// Not thread-safe: updated under LibraryCollection's write lock, read under its
+// read lock.
+public class CatalogAggregates {
+    private static final int DENSE_LIMIT = 1 << 12;
+
+    private long totalBooks;
+    private long availableBooks;
+    private long totalBorrowCount;
+    private int minBorrowCount = Integer.MAX_VALUE;
+    private int maxBorrowCount = Integer.MIN_VALUE;
+    private int[] histogram = new int[64];  // books per borrow count in [0, DENSE_LIMIT)
+    private final TreeMap<Integer, Integer> sparse = new TreeMap<>();  // other borrow counts
+    private final Map<String, long[]> authors = new HashMap<>();  // books, available books, borrows
+
+    void add(Book book) {
+        int borrows = book.getBorrowCount();
+        totalBooks++;
+        if (book.isAvailable()) availableBooks++;
+        totalBorrowCount += borrows;
+        count(borrows, 1);
+        if (borrows < minBorrowCount) minBorrowCount = borrows;
+        if (borrows > maxBorrowCount) maxBorrowCount = borrows;
+
+        long[] author = authors.computeIfAbsent(authorKey(book), k -> new long[3]);
+        author[0]++;
+        if (book.isAvailable()) author[1]++;
+        author[2] += borrows;
+    }
+
+    void remove(Book book) {
+        int borrows = book.getBorrowCount();
+        totalBooks--;
+        if (book.isAvailable()) availableBooks--;
+        totalBorrowCount -= borrows;
+        if (count(borrows, -1) == 0) {
+            if (totalBooks == 0) {
+                minBorrowCount = Integer.MAX_VALUE;
+                maxBorrowCount = Integer.MIN_VALUE;
+            } else {
+                if (borrows == minBorrowCount) minBorrowCount = nextOccupied(borrows, 1);
+                if (borrows == maxBorrowCount) maxBorrowCount = nextOccupied(borrows, -1);
+            }
+        }
+
+        String key = authorKey(book);
+        long[] author = authors.get(key);
+        if (author != null) {
+            author[1] -= book.isAvailable() ? 1 : 0;
+            author[2] -= borrows;
+            if (--author[0] == 0) authors.remove(key);
+        }
+    }
+
+    // Only availability, borrow count and author feed the totals
+    static boolean tracks(BookField field) {
+        return field == BookField.AVAILABILITY || field == BookField.BORROW_COUNT || field == BookField.AUTHOR;
+    }
+
+    CatalogStatistics snapshot() {
+        return new CatalogStatistics(totalBooks, availableBooks, totalBorrowCount,
+                                     minBorrowCount, maxBorrowCount, authors.size());
+    }
+
+    // Null when the author has no books
+    CatalogStatistics.AuthorCounts author(String author) {
+        long[] counts = authors.get(author == null ? "" : author);
+        return counts == null ? null : new CatalogStatistics.AuthorCounts((int) counts[0], (int) counts[1], counts[2]);
+    }
+
+    Map<String, CatalogStatistics.AuthorCounts> authors() {
+        Map<String, CatalogStatistics.AuthorCounts> copy = new TreeMap<>();
+        authors.forEach((name, counts) ->
+            copy.put(name, new CatalogStatistics.AuthorCounts((int) counts[0], (int) counts[1], counts[2])));
+        return copy;
+    }
+
+    // Number of books with a borrow count in [min, max], from the histogram
+    long countBorrowCounts(int min, int max) {
+        long books = 0;
+        for (int i = Math.max(min, 0); i <= max && i < histogram.length; i++) {
+            books += histogram[i];
+        }
+        if (min <= max) {
+            for (int count : sparse.subMap(min, true, max, true).values()) books += count;
+        }
+        return books;
+    }
+
+    // Number of books per author ("" for none)
+    void forEachAuthor(BiConsumer<String, Long> action) {
+        authors.forEach((name, counts) -> action.accept(name, counts[0]));
+    }
+
+    // ---------- borrow count histogram ----------
+
+    // Adjust the number of books with this borrow count; returns the new number
+    private int count(int borrows, int delta) {
+        if (borrows >= 0 && borrows < DENSE_LIMIT) {
+            if (borrows >= histogram.length) {
+                histogram = Arrays.copyOf(histogram, Math.min(DENSE_LIMIT, Math.max(borrows + 1, histogram.length * 2)));
+            }
+            return histogram[borrows] += delta;
+        }
+        int books = sparse.getOrDefault(borrows, 0) + delta;
+        if (books == 0) sparse.remove(borrows);
+        else sparse.put(borrows, books);
+        return books;
+    }
+
+    // Nearest occupied borrow count beyond the given one, walking up (+1) or down (-1)
+    private int nextOccupied(int borrows, int direction) {
+        if (direction > 0) {
+            if (borrows < 0) {
+                Integer next = sparse.higherKey(borrows);
+                if (next != null && next < 0) return next;
+                borrows = -1;
+            }
+            for (int i = borrows + 1; i < histogram.length; i++) {
+                if (histogram[i] > 0) return i;
+            }
+            Integer next = sparse.higherKey(Math.max(borrows, DENSE_LIMIT - 1));
+            return next != null ? next : Integer.MAX_VALUE;
+        }
+        if (borrows >= DENSE_LIMIT) {
+            Integer previous = sparse.lowerKey(borrows);
+            if (previous != null && previous >= DENSE_LIMIT) return previous;
+            borrows = DENSE_LIMIT;
+        }
+        for (int i = Math.min(borrows, histogram.length) - 1; i >= 0; i--) {
+            if (histogram[i] > 0) return i;
+        }
+        Integer previous = sparse.lowerKey(Math.min(borrows, 0));
+        return previous != null ? previous : Integer.MIN_VALUE;
+    }
+
+    private static String authorKey(Book book) {
+        return book.getAuthor() == null ? "" : book.getAuthor();
+    }
+}
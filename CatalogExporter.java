@@ -0,0 +1,275 @@
+package library;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+// Streaming CSV / JSON Lines exporter. Rows are rendered straight into a reused
+// UTF-8 byte buffer (no format strings, no boxing); large exports render blocks
+// of rows in parallel and write them to the file in order.
+public class CatalogExporter {
+    public enum Format { CSV, JSON_LINES }
+
+    public static final String CSV_HEADER = "Title,Author,ISBN,PublishDate,Available,BorrowCount";
+    private static final int BLOCK_ROWS = 4096;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final ThreadLocal<RowBuffer> BUFFERS = ThreadLocal.withInitial(RowBuffer::new);
+
+    // Export books to a file; gzip-compressed when requested. Returns the row count.
+    public static long export(List<? extends Book> books, String filename, Format format, boolean gzip) throws IOException {
+        try (OutputStream file = new FileOutputStream(filename);
+             OutputStream out = gzip ? new GZIPOutputStream(file, OUTPUT_BUFFER_SIZE) : new BufferedOutputStream(file, OUTPUT_BUFFER_SIZE)) {
+            return export(books, out, format);
+        }
+    }
+
+    // Export books to a stream (the stream is not closed)
+    public static long export(List<? extends Book> books, OutputStream out, Format format) throws IOException {
+        if (format == Format.CSV) {
+            RowBuffer header = BUFFERS.get();
+            header.reset();
+            header.ascii(CSV_HEADER).ascii('\n');
+            header.writeTo(out);
+        }
+
+        int blocks = (books.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        if (blocks <= 1) {
+            RowBuffer buffer = BUFFERS.get();
+            renderBlock(books, 0, books.size(), format, buffer);
+            buffer.writeTo(out);
+            return books.size();
+        }
+
+        // Render ahead on the pool, bounded to a small window so memory stays flat
+        int window = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+        ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        while (next < blocks || !pending.isEmpty()) {
+            while (next < blocks && pending.size() < window) {
+                int from = next * BLOCK_ROWS;
+                int to = Math.min(books.size(), from + BLOCK_ROWS);
+                pending.add(CompletableFuture.supplyAsync(() -> {
+                    RowBuffer buffer = BUFFERS.get();
+                    renderBlock(books, from, to, format, buffer);
+                    return buffer.toByteArray();
+                }));
+                next++;
+            }
+            try {
+                out.write(pending.poll().join());
+            } catch (CompletionException e) {
+                throw new IOException("Error rendering rows: " + e.getCause(), e.getCause());
+            }
+        }
+        return books.size();
+    }
+
+    // Single-row renderings, for callers that need one formatted record
+    public static String toCsv(Book book) {
+        RowBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        appendCsv(buffer, book);
+        return buffer.toString();
+    }
+
+    public static String toJson(Book book) {
+        RowBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        appendJson(buffer, book);
+        return buffer.toString();
+    }
+
+    private static void renderBlock(List<? extends Book> books, int from, int to, Format format, RowBuffer buffer) {
+        buffer.reset();
+        for (int i = from; i < to; i++) {
+            if (format == Format.CSV) {
+                appendCsv(buffer, books.get(i));
+            } else {
+                appendJson(buffer, books.get(i));
+            }
+            buffer.ascii('\n');
+        }
+    }
+
+    // "title","author","isbn","date",available,borrowCount
+    private static void appendCsv(RowBuffer buffer, Book book) {
+        buffer.ascii('"').csvText(book.getTitle()).ascii("\",\"");
+        buffer.csvText(book.getAuthor()).ascii("\",\"");
+        buffer.csvText(book.getIsbn()).ascii("\",\"");
+        buffer.date(book.getPublishDate()).ascii("\",");
+        buffer.ascii(book.isAvailable() ? "true" : "false").ascii(',');
+        buffer.integer(book.getBorrowCount());
+    }
+
+    // {"title":...,"author":...,"isbn":...,"publishDate":...,"available":...,"borrowCount":...}
+    private static void appendJson(RowBuffer buffer, Book book) {
+        buffer.ascii("{\"title\":").jsonString(book.getTitle());
+        buffer.ascii(",\"author\":").jsonString(book.getAuthor());
+        buffer.ascii(",\"isbn\":").jsonString(book.getIsbn());
+        buffer.ascii(",\"publishDate\":");
+        if (book.getPublishDate() != null) {
+            buffer.ascii('"').date(book.getPublishDate()).ascii('"');
+        } else {
+            buffer.ascii("null");
+        }
+        buffer.ascii(",\"available\":").ascii(book.isAvailable() ? "true" : "false");
+        buffer.ascii(",\"borrowCount\":").integer(book.getBorrowCount());
+        buffer.ascii('}');
+    }
+
+    // Growable UTF-8 byte buffer with escaping writers; one per thread, reused across rows
+    private static class RowBuffer {
+        private static final byte[] HEX = "0123456789abcdef".getBytes();
+        private byte[] bytes = new byte[1 << 16];
+        private int length;
+
+        void reset() { length = 0; }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        RowBuffer ascii(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        RowBuffer ascii(String s) {
+            int n = s.length();
+            ensure(n);
+            for (int i = 0; i < n; i++) {
+                bytes[length++] = (byte) s.charAt(i);
+            }
+            return this;
+        }
+
+        // Text inside a quoted CSV field: embedded quotes are doubled
+        RowBuffer csvText(String s) {
+            if (s == null) return this;
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    ascii('"').ascii('"');
+                } else {
+                    i = utf8(s, i, c);
+                }
+            }
+            return this;
+        }
+
+        // JSON string literal (or null)
+        RowBuffer jsonString(String s) {
+            if (s == null) return ascii("null");
+            ascii('"');
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': ascii("\\\""); break;
+                    case '\\': ascii("\\\\"); break;
+                    case '\n': ascii("\\n"); break;
+                    case '\r': ascii("\\r"); break;
+                    case '\t': ascii("\\t"); break;
+                    case '\b': ascii("\\b"); break;
+                    case '\f': ascii("\\f"); break;
+                    default:
+                        if (c < 0x20) {
+                            ensure(6);
+                            ascii("\\u00");
+                            bytes[length++] = HEX[c >> 4];
+                            bytes[length++] = HEX[c & 0xF];
+                        } else {
+                            i = utf8(s, i, c);
+                        }
+                }
+            }
+            return ascii('"');
+        }
+
+        // Encode one char (or surrogate pair) as UTF-8; returns the index of the last char consumed
+        private int utf8(String s, int i, char c) {
+            ensure(4);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                bytes[length++] = (byte) (0xF0 | (cp >> 18));
+                bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+                return i + 1;
+            } else if (Character.isSurrogate(c)) {
+                bytes[length++] = '?';  // unpaired surrogate, same as String.getBytes
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+            return i;
+        }
+
+        RowBuffer integer(int value) {
+            if (value == Integer.MIN_VALUE) return ascii(Integer.toString(value));
+            ensure(11);
+            if (value < 0) {
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            for (int lo = start, hi = length - 1; lo < hi; lo++, hi--) {
+                byte t = bytes[lo];
+                bytes[lo] = bytes[hi];
+                bytes[hi] = t;
+            }
+            return this;
+        }
+
+        // ISO yyyy-MM-dd without going through DateTimeFormatter
+        RowBuffer date(LocalDate date) {
+            if (date == null) return this;
+            int year = date.getYear();
+            if (year < 0 || year > 9999) return ascii(date.toString());
+            ensure(10);
+            digits(year, 4);
+            bytes[length++] = '-';
+            digits(date.getMonthValue(), 2);
+            bytes[length++] = '-';
+            digits(date.getDayOfMonth(), 2);
+            return this;
+        }
+
+        private void digits(int value, int width) {
+            for (int i = width - 1; i >= 0; i--) {
+                bytes[length + i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += width;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package library;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Point-in-time copy of the catalog tagged with the journal LSN it covers
+public class CatalogSnapshot {
+    // Layout: int magic, int version, long checkpointLsn, int count,
+    //         count x BookCodec record, long crc32 of everything before it
+    private static final int MAGIC = 0x4C42534E; // "LBSN"
+    private static final int VERSION = 1;
+
+    private final long checkpointLsn;
+    private final List<Book> books;
+
+    private CatalogSnapshot(long checkpointLsn, List<Book> books) {
+        this.checkpointLsn = checkpointLsn;
+        this.books = books;
+    }
+
+    public long getCheckpointLsn() { return checkpointLsn; }
+    public List<Book> getBooks() { return books; }
+
+    // Write to a temp file, then atomically replace the previous snapshot
+    public static void write(List<? extends Book> books, long checkpointLsn, String filename) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checkpointLsn);
+            out.writeInt(books.size());
+            for (Book book : books) {
+                BookCodec.write(out, book);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Load a snapshot; returns null if none has been written yet
+    public static CatalogSnapshot read(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) return null;
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) throw new IOException("Not a snapshot file");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+            long checkpointLsn = in.readLong();
+            int count = in.readInt();
+            List<Book> books = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                books.add(BookCodec.read(in));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException("Snapshot checksum mismatch");
+            return new CatalogSnapshot(checkpointLsn, books);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package library;
+
+import java.util.IntSummaryStatistics;
+
+// Point-in-time totals for a LibraryCollection, read from its running aggregates
+// (see CatalogAggregates) instead of a scan of the catalog
+public class CatalogStatistics {
+    private final long totalBooks;
+    private final long availableBooks;
+    private final long totalBorrowCount;
+    private final int minBorrowCount;
+    private final int maxBorrowCount;
+    private final int authorCount;
+
+    CatalogStatistics(long totalBooks, long availableBooks, long totalBorrowCount,
+                      int minBorrowCount, int maxBorrowCount, int authorCount) {
+        this.totalBooks = totalBooks;
+        this.availableBooks = availableBooks;
+        this.totalBorrowCount = totalBorrowCount;
+        this.minBorrowCount = minBorrowCount;
+        this.maxBorrowCount = maxBorrowCount;
+        this.authorCount = authorCount;
+    }
+
+    public long getTotalBooks() { return totalBooks; }
+    public long getAvailableBooks() { return availableBooks; }
+    public long getBorrowedBooks() { return totalBooks - availableBooks; }
+    public long getTotalBorrowCount() { return totalBorrowCount; }
+    public int getAuthorCount() { return authorCount; }
+
+    // 0 for an empty catalog, like IntSummaryStatistics.getAverage
+    public double getAverageBorrowCount() {
+        return totalBooks == 0 ? 0 : (double) totalBorrowCount / totalBooks;
+    }
+
+    // Integer.MAX_VALUE / MIN_VALUE for an empty catalog, like IntSummaryStatistics
+    public int getMinBorrowCount() { return minBorrowCount; }
+    public int getMaxBorrowCount() { return maxBorrowCount; }
+
+    // Same values as BookFilters.getBorrowStatistics over every book
+    public IntSummaryStatistics toIntSummaryStatistics() {
+        return totalBooks == 0 ? new IntSummaryStatistics()
+                               : new IntSummaryStatistics(totalBooks, minBorrowCount, maxBorrowCount, totalBorrowCount);
+    }
+
+    // Books, available books and total borrows of one author
+    public static class AuthorCounts {
+        private final int books;
+        private final int availableBooks;
+        private final long borrowCount;
+
+        AuthorCounts(int books, int availableBooks, long borrowCount) {
+            this.books = books;
+            this.availableBooks = availableBooks;
+            this.borrowCount = borrowCount;
+        }
+
+        public int getBooks() { return books; }
+        public int getAvailableBooks() { return availableBooks; }
+        public long getBorrowCount() { return borrowCount; }
+
+        @Override
+        public String toString() {
+            return books + " book(s), " + availableBooks + " available, " + borrowCount + " borrows";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d books (%d available, %d borrowed), %d authors, borrows: total %d, avg %.2f, min %d, max %d",
+                             totalBooks, availableBooks, getBorrowedBooks(), authorCount, totalBorrowCount,
+                             getAverageBorrowCount(), totalBooks == 0 ? 0 : minBorrowCount,
+                             totalBooks == 0 ? 0 : maxBorrowCount);
+    }
+}
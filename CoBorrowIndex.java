@@ -0,0 +1,485 @@
+package library;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// "Borrowers of this also borrowed": an item-item co-occurrence matrix over borrow
+// history, updated one loan at a time. Books are numbered densely by ISBN and each
+// row of the matrix is a small open-addressing table of (neighbor id, count) pairs
+// packed into one long[], so there is no boxing, no object per pair and one cache
+// miss per lookup. A loan pairs the book
+// with the patron's RECENT_LOANS most recent distinct books, both ways; borrowing a
+// book again while it is still among them adds nothing.
+//
+// Rows are capped at MAX_NEIGHBORS. When a full row meets a new neighbor, its
+// smallest entry is replaced and the newcomer inherits that count plus one
+// (Space-Saving), so frequent pairs survive and a bestseller's row stays bounded.
+// An inherited count overstates a pair by at most the largest count the row has
+// evicted, its floor, so pairs are ranked by their guaranteed count, count - floor
+// (exact for rows that never evicted). The ranking is cosine similarity,
+// guaranteed / sqrt(borrowers(a) * borrowers(b)), so bestsellers do not top every
+// list. A query reads one row of at most 64 slots whatever the size of the catalog.
+//
+// Saving copies the index in O(books + patrons) array copies under the lock and writes
+// the copy without it; rows and histories are shared with the copy and duplicated by
+// the live index only before their first change afterwards. The index remembers the
+// journal LSN of the last loan it counted, so replaying the journal over a saved
+// index counts every later loan exactly once. Thread-safe.
+public class CoBorrowIndex {
+    // Layout: int magic, int version, long lsn, int itemCount, itemCount x isbn,
+    //         itemCount x (int borrowers, int floor, int neighbors,
+    //                      neighbors x (int item, int count)),
+    //         int patronCount, patronCount x (int patronId, int loans, loans x int item,
+    //         oldest first), long crc32 of everything before it
+    private static final int MAGIC = 0x4C42434F; // "LBCO"
+    private static final int VERSION = 2;  // 2: the LSN of the last loan counted
+    static final int RECENT_LOANS = 16;
+    static final int MAX_NEIGHBORS = 48;  // three quarters of a 64-slot row
+
+    // Books: id -> ISBN, loans by patrons who had not borrowed it recently, matrix row
+    private String[] isbns = new String[1024];
+    private int[] borrowers = new int[1024];
+    private long[][] rows = new long[1024][];  // (neighbor id + 1) << 32 | count, 0 = empty
+    private int[] rowSizes = new int[1024];
+    private int[] rowFloors = new int[1024];  // largest count evicted from the row
+    private int[] rowGenerations = new int[1024];  // rows from an earlier generation are shared
+    private int items;
+    private int[] isbnTable = new int[2048];  // open addressing: id + 1, 0 = empty
+
+    // Patrons: id -> slot, and per slot the recent books as a ring once full
+    private int[] patronTable = new int[1024];  // slot + 1, 0 = empty
+    private int[] patronIds = new int[512];
+    private int[][] recent = new int[512][];
+    private int[] loans = new int[512];  // loans appended to recent, ever
+    private int[] recentGenerations = new int[512];
+    private int patrons;
+
+    private int generation;  // advanced by every Image, which then shares rows and histories
+    private long lsn;  // journal LSN of the last loan counted, 0 if none was journaled
+
+    // One recommended book
+    public static final class Recommendation {
+        private final String isbn;
+        private final int coBorrows;
+        private final double score;
+
+        Recommendation(String isbn, int coBorrows, double score) {
+            this.isbn = isbn;
+            this.coBorrows = coBorrows;
+            this.score = score;
+        }
+
+        public String getIsbn() { return isbn; }
+        public int getCoBorrows() { return coBorrows; }  // at least this many loans paired the two
+        public double getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%d co-borrows, similarity %.2f)", isbn, coBorrows, score);
+        }
+    }
+
+    // Count one loan; books without an ISBN are not tracked
+    public void recordBorrow(int patronId, String isbn) {
+        recordBorrow(patronId, isbn, 0);
+    }
+
+    // Count one journaled loan, unless this index already counted it (lsn at or below
+    // getLsn()); lsn 0 means not journaled and is always counted
+    public synchronized void recordBorrow(int patronId, String isbn, long lsn) {
+        if (lsn != 0) {
+            if (lsn <= this.lsn) return;
+            this.lsn = lsn;
+        }
+        if (isbn == null || isbn.isEmpty()) return;
+        int item = itemId(isbn, true);
+        int patron = patronSlot(patronId);
+        int[] history = recent[patron];
+        int count = Math.min(loans[patron], RECENT_LOANS);
+        for (int i = 0; i < count; i++) {
+            if (history[i] == item) return;  // borrowed again: no new pairs
+        }
+        borrowers[item]++;
+        for (int i = 0; i < count; i++) {
+            increment(item, history[i]);
+            increment(history[i], item);
+        }
+        if (recentGenerations[patron] != generation) {
+            history = recent[patron] = history.clone();
+            recentGenerations[patron] = generation;
+        }
+        // Grow until RECENT_LOANS, then overwrite the oldest
+        if (count == history.length && count < RECENT_LOANS) {
+            history = recent[patron] = Arrays.copyOf(history, Math.min(RECENT_LOANS, history.length * 2));
+        }
+        history[loans[patron] % RECENT_LOANS] = item;
+        loans[patron]++;
+    }
+
+    // Up to n books most similar to the one with this ISBN, most similar first
+    public synchronized List<Recommendation> similar(String isbn, int n) {
+        int item = isbn == null ? -1 : itemId(isbn, false);
+        if (item < 0 || n <= 0 || rowSizes[item] == 0) return Collections.emptyList();
+        long[] row = rows[item];
+        // Best n so far in ascending score order; bestItems[0] is the one to beat
+        int[] bestItems = new int[n];
+        double[] bestScores = new double[n];
+        Arrays.fill(bestScores, -1);
+        double self = borrowers[item];
+        for (long entry : row) {
+            if (entry == 0) continue;
+            int other = neighbor(entry);
+            int guaranteed = count(entry) - rowFloors[item];
+            if (guaranteed <= 0) continue;
+            double score = guaranteed / Math.sqrt(self * Math.max(1, borrowers[other]));
+            if (score < bestScores[0] || (score == bestScores[0] && other > bestItems[0])) continue;
+            int i = 0;
+            while (i + 1 < n && (bestScores[i + 1] < score || (bestScores[i + 1] == score && bestItems[i + 1] > other))) {
+                bestScores[i] = bestScores[i + 1];
+                bestItems[i] = bestItems[i + 1];
+                i++;
+            }
+            bestScores[i] = score;
+            bestItems[i] = other;
+        }
+        List<Recommendation> result = new ArrayList<>(n);
+        for (int i = n - 1; i >= 0 && bestScores[i] >= 0; i--) {
+            int other = bestItems[i];
+            int guaranteed = count(find(item, other)) - rowFloors[item];
+            result.add(new Recommendation(isbns[other], guaranteed, Math.min(1, bestScores[i])));
+        }
+        return result;
+    }
+
+    // Books with at least one recorded loan
+    public synchronized int size() {
+        return items;
+    }
+
+    public synchronized long getLoans() {
+        long total = 0;
+        for (int i = 0; i < items; i++) total += borrowers[i];
+        return total;
+    }
+
+    // Journal LSN of the last loan counted; 0 if none was journaled
+    public synchronized long getLsn() {
+        return lsn;
+    }
+
+    // ---- matrix rows ----
+
+    private static int neighbor(long entry) {
+        return (int) (entry >>> 32) - 1;
+    }
+
+    private static int count(long entry) {
+        return (int) entry;
+    }
+
+    private static long entry(int neighbor, int count) {
+        return ((long) (neighbor + 1) << 32) | count;
+    }
+
+    private void increment(int row, int neighbor) {
+        if (rowGenerations[row] != generation) {
+            if (rows[row] != null) rows[row] = rows[row].clone();
+            rowGenerations[row] = generation;
+        }
+        long[] slots = rows[row];
+        if (slots == null) slots = rows[row] = new long[4];
+        int mask = slots.length - 1;
+        int slot = hash(neighbor) & mask;
+        for (long entry = slots[slot]; entry != 0; entry = slots[slot]) {
+            if (neighbor(entry) == neighbor) {
+                slots[slot] = entry + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int inherited = 0;
+        if (rowSizes[row] == MAX_NEIGHBORS) {
+            inherited = evictSmallest(row);
+        } else if ((rowSizes[row] + 1) * 4 > slots.length * 3) {
+            growRow(row);
+        }
+        put(rows[row], entry(neighbor, inherited + 1));
+        rowSizes[row]++;
+    }
+
+    // Insert an entry whose neighbor is known to be absent into a row with room
+    private static void put(long[] slots, long entry) {
+        int mask = slots.length - 1;
+        int slot = hash(neighbor(entry)) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+        slots[slot] = entry;
+    }
+
+    private void growRow(int row) {
+        long[] old = rows[row];
+        long[] slots = rows[row] = new long[old.length * 2];
+        for (long entry : old) {
+            if (entry != 0) put(slots, entry);
+        }
+    }
+
+    // Remove the entry with the smallest count and return that count
+    private int evictSmallest(int row) {
+        long[] slots = rows[row];
+        int smallest = -1;
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != 0 && (smallest < 0 || count(slots[slot]) < count(slots[smallest]))) smallest = slot;
+        }
+        int count = count(slots[smallest]);
+        rowFloors[row] = Math.max(rowFloors[row], count);
+        // Backward-shift deletion keeps every later entry reachable from its home slot
+        int mask = slots.length - 1;
+        int hole = smallest;
+        for (int slot = (hole + 1) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hash(neighbor(slots[slot])) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+        }
+        slots[hole] = 0;
+        rowSizes[row]--;
+        return count;
+    }
+
+    // The row's entry for a neighbor, 0 if none
+    private long find(int row, int neighbor) {
+        long[] slots = rows[row];
+        int mask = slots.length - 1;
+        for (int slot = hash(neighbor) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (neighbor(slots[slot]) == neighbor) return slots[slot];
+        }
+        return 0;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ---- ids ----
+
+    // Dense id for an ISBN, assigned on first use when create is set; -1 if unknown
+    private int itemId(String isbn, boolean create) {
+        int mask = isbnTable.length - 1;
+        int slot = hash(isbn.hashCode()) & mask;
+        while (isbnTable[slot] != 0) {
+            int id = isbnTable[slot] - 1;
+            if (isbns[id].equals(isbn)) return id;
+            slot = (slot + 1) & mask;
+        }
+        if (!create) return -1;
+        int id = items++;
+        if (id == isbns.length) {
+            int capacity = isbns.length * 2;
+            isbns = Arrays.copyOf(isbns, capacity);
+            borrowers = Arrays.copyOf(borrowers, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            rowFloors = Arrays.copyOf(rowFloors, capacity);
+            rowSizes = Arrays.copyOf(rowSizes, capacity);
+            rowGenerations = Arrays.copyOf(rowGenerations, capacity);
+        }
+        isbns[id] = isbn;
+        isbnTable[slot] = id + 1;
+        if (items * 2 > isbnTable.length) {
+            isbnTable = new int[isbnTable.length * 2];
+            for (int i = 0; i < items; i++) {
+                int s = hash(isbns[i].hashCode()) & (isbnTable.length - 1);
+                while (isbnTable[s] != 0) s = (s + 1) & (isbnTable.length - 1);
+                isbnTable[s] = i + 1;
+            }
+        }
+        return id;
+    }
+
+    private int patronSlot(int patronId) {
+        int mask = patronTable.length - 1;
+        int slot = hash(patronId) & mask;
+        while (patronTable[slot] != 0) {
+            int p = patronTable[slot] - 1;
+            if (patronIds[p] == patronId) return p;
+            slot = (slot + 1) & mask;
+        }
+        int p = patrons++;
+        if (p == patronIds.length) {
+            int capacity = patronIds.length * 2;
+            patronIds = Arrays.copyOf(patronIds, capacity);
+            recent = Arrays.copyOf(recent, capacity);
+            loans = Arrays.copyOf(loans, capacity);
+            recentGenerations = Arrays.copyOf(recentGenerations, capacity);
+        }
+        patronIds[p] = patronId;
+        recent[p] = new int[4];
+        recentGenerations[p] = generation;
+        patronTable[slot] = p + 1;
+        if (patrons * 2 > patronTable.length) {
+            patronTable = new int[patronTable.length * 2];
+            for (int i = 0; i < patrons; i++) {
+                int s = hash(patronIds[i]) & (patronTable.length - 1);
+                while (patronTable[s] != 0) s = (s + 1) & (patronTable.length - 1);
+                patronTable[s] = i + 1;
+            }
+        }
+        return p;
+    }
+
+    // ---- persistence ----
+
+    // Write to a temp file, then atomically replace the previous one. Only taking the
+    // image holds the lock; loans recorded while it is written are not held up.
+    public void save(String filename) throws IOException {
+        image().save(filename);
+    }
+
+    // The index as it is now, to be saved later, possibly on another thread. Cheap:
+    // copies the per-book and per-patron arrays, not the rows.
+    public synchronized Image image() {
+        Image image = new Image(this);
+        generation++;  // rows and histories now belong to the image until next changed
+        return image;
+    }
+
+    // Point-in-time copy of an index; only ever read
+    public static final class Image {
+        private final long lsn;
+        private final int items;
+        private final String[] isbns;  // filled in order and never overwritten, so shared
+        private final int[] borrowers;
+        private final int[] rowFloors;
+        private final int[] rowSizes;
+        private final long[][] rows;
+        private final int patrons;
+        private final int[] patronIds;  // likewise shared
+        private final int[][] recent;
+        private final int[] loans;
+
+        private Image(CoBorrowIndex index) {
+            lsn = index.lsn;
+            items = index.items;
+            isbns = index.isbns;
+            borrowers = Arrays.copyOf(index.borrowers, items);
+            rowFloors = Arrays.copyOf(index.rowFloors, items);
+            rowSizes = Arrays.copyOf(index.rowSizes, items);
+            rows = Arrays.copyOf(index.rows, items);
+            patrons = index.patrons;
+            patronIds = index.patronIds;
+            recent = Arrays.copyOf(index.recent, patrons);
+            loans = Arrays.copyOf(index.loans, patrons);
+        }
+
+        public long getLsn() { return lsn; }
+
+        // Rows and histories go through one array each, so the checksum is updated a
+        // block at a time rather than per byte
+        public void save(String filename) throws IOException {
+            Path target = Paths.get(filename).toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                ByteBuffer block = ByteBuffer.allocate(Math.max(MAX_NEIGHBORS * 8, RECENT_LOANS * 4));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(lsn);
+                out.writeInt(items);
+                for (int item = 0; item < items; item++) {
+                    BookCodec.writeString(out, isbns[item]);
+                }
+                for (int item = 0; item < items; item++) {
+                    out.writeInt(borrowers[item]);
+                    out.writeInt(rowFloors[item]);
+                    out.writeInt(rowSizes[item]);
+                    if (rows[item] == null) continue;
+                    block.clear();
+                    for (long entry : rows[item]) {
+                        if (entry != 0) block.putInt(neighbor(entry)).putInt(count(entry));
+                    }
+                    out.write(block.array(), 0, block.position());
+                }
+                out.writeInt(patrons);
+                for (int p = 0; p < patrons; p++) {
+                    int count = Math.min(loans[p], RECENT_LOANS);
+                    out.writeInt(patronIds[p]);
+                    out.writeInt(count);
+                    block.clear();
+                    for (int i = loans[p] - count; i < loans[p]; i++) {
+                        block.putInt(recent[p][i % RECENT_LOANS]);
+                    }
+                    out.write(block.array(), 0, block.position());
+                }
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Load a saved index; an empty one if nothing has been saved yet
+    public static CoBorrowIndex load(String filename) throws IOException {
+        CoBorrowIndex index = new CoBorrowIndex();
+        File file = new File(filename);
+        if (!file.exists()) return index;
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            byte[] block = new byte[Math.max(MAX_NEIGHBORS * 8, RECENT_LOANS * 4)];
+            if (in.readInt() != MAGIC) throw new IOException("Not a co-borrow index file");
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported co-borrow index version " + version);
+            index.lsn = version == 1 ? 0 : in.readLong();  // version 1 predates LSN tracking
+            int items = in.readInt();
+            for (int item = 0; item < items; item++) {
+                if (index.itemId(BookCodec.readString(in), true) != item) throw new IOException("Duplicate ISBN");
+            }
+            // Rows refer to later items too, so they follow the complete ISBN list
+            for (int item = 0; item < items; item++) {
+                index.borrowers[item] = in.readInt();
+                index.rowFloors[item] = in.readInt();
+                int neighbors = in.readInt();
+                if (neighbors < 0 || neighbors > MAX_NEIGHBORS) throw new IOException("Corrupt co-borrow row");
+                if (neighbors == 0) continue;
+                int capacity = 4;
+                while (neighbors * 4 > capacity * 3) capacity *= 2;
+                long[] slots = index.rows[item] = new long[capacity];
+                in.readFully(block, 0, neighbors * 8);
+                ByteBuffer entries = ByteBuffer.wrap(block, 0, neighbors * 8);
+                for (int i = 0; i < neighbors; i++) {
+                    int neighbor = entries.getInt();
+                    int count = entries.getInt();
+                    if (neighbor < 0 || neighbor >= items || count <= 0) throw new IOException("Corrupt co-borrow row");
+                    put(slots, entry(neighbor, count));
+                }
+                index.rowSizes[item] = neighbors;
+            }
+            int patrons = in.readInt();
+            for (int p = 0; p < patrons; p++) {
+                int slot = index.patronSlot(in.readInt());
+                int count = in.readInt();
+                if (count < 0 || count > RECENT_LOANS) throw new IOException("Corrupt patron history");
+                index.recent[slot] = new int[Math.max(4, count)];
+                in.readFully(block, 0, count * 4);
+                ByteBuffer history = ByteBuffer.wrap(block, 0, count * 4);
+                for (int i = 0; i < count; i++) {
+                    int item = history.getInt();
+                    if (item < 0 || item >= items) throw new IOException("Corrupt patron history");
+                    index.recent[slot][i] = item;
+                }
+                index.loans[slot] = count;
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException("Co-borrow index checksum mismatch");
+        }
+        return index;
+    }
+}
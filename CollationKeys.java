@@ -0,0 +1,201 @@
+package library;
+
+import java.text.CollationElementIterator;
+import java.text.Collator;
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Locale-aware sort keys for titles and authors. A string is turned into a byte key
+// once; comparing two keys is then a plain unsigned byte comparison, so a sort no
+// longer folds case on every comparison, and accented letters sort next to their
+// base letter ("Émile" with "Emile", not after "Zola").
+//
+// Keys follow the locale's Collator at SECONDARY strength (case ignored, as with
+// compareToIgnoreCase; accents only break ties) and order exactly as its compare
+// does: the primary weights of the collation elements, two bytes each, a 0x0000
+// terminator, then their secondary weights with trailing zeros dropped. The JDK's
+// own CollationKey is larger and slow to build, so it is only used for locales that
+// compare accents from the end of the string (French style). Pure-ASCII strings,
+// the common case, are encoded from a per-character table of collation elements
+// unless the locale has contractions among ASCII characters (e.g. "ch").
+// The locale is library.collationLocale (a language tag) if set, otherwise the
+// default locale.
+public class CollationKeys {
+    private static final byte[] EMPTY = new byte[0];
+    private static final Locale LOCALE = locale();
+    private static final int MAX_SHARED = 1 << 16;
+    private static final Map<String, Key> SHARED = new ConcurrentHashMap<>();
+
+    // Collators are not thread-safe
+    private static final ThreadLocal<RuleBasedCollator> COLLATOR = ThreadLocal.withInitial(CollationKeys::newCollator);
+
+    // Collation elements of each ASCII character, or null when they cannot be used
+    private static final int[][] ASCII_ELEMENTS = asciiElements(newCollator());
+    // French-style collation compares accents from the end of the string, which the
+    // compact key does not model
+    private static final boolean BACKWARD_SECONDARY = newCollator().compare("\u00e9e", "e\u00e9") < 0;
+
+    private CollationKeys() {
+    }
+
+    // Sort key for the text; null sorts like the empty string, first
+    public static byte[] of(String text) {
+        if (text == null || text.isEmpty()) return EMPTY;
+        if (BACKWARD_SECONDARY) return COLLATOR.get().getCollationKey(text).toByteArray();
+        KeyBuilder key = new KeyBuilder(text.length());
+        if (ASCII_ELEMENTS != null && isAscii(text)) {
+            for (int i = 0; i < text.length(); i++) {
+                for (int element : ASCII_ELEMENTS[text.charAt(i)]) key.add(element);
+            }
+        } else {
+            CollationElementIterator elements = COLLATOR.get().getCollationElementIterator(text);
+            for (int element = elements.next(); element != CollationElementIterator.NULLORDER; element = elements.next()) {
+                key.add(element);
+            }
+        }
+        return key.toBytes();
+    }
+
+    // A key together with the string it was computed from
+    public static final class Key implements Comparable<Key> {
+        private final String source;
+        private final long prefix;  // decides most comparisons without loading the array
+        private final byte[] bytes;
+
+        public Key(String source) {
+            this.source = source;
+            this.bytes = of(source);
+            this.prefix = prefix(bytes);
+        }
+
+        // Whether this is the key of the text; identity first, as the text is usually the source itself
+        public boolean isFor(String text) {
+            return source == text || (source != null && source.equals(text));
+        }
+
+        public byte[] getBytes() {
+            return bytes.clone();
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            if (prefix != other.prefix) return Long.compareUnsigned(prefix, other.prefix);
+            return CollationKeys.compare(bytes, other.bytes);
+        }
+    }
+
+    // Key for a string that many books share, such as an author, from a bounded
+    // cache, so those books share one key
+    public static Key shared(String text) {
+        if (text == null) return new Key(null);
+        Key key = SHARED.get(text);
+        if (key == null) {
+            if (SHARED.size() >= MAX_SHARED) SHARED.clear();
+            key = new Key(text);
+            SHARED.put(text, key);
+        }
+        return key;
+    }
+
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    // First 8 bytes of a key, zero-padded, as one number. When the prefixes of two
+    // keys differ, Long.compareUnsigned on them gives the same order as compare on
+    // the keys, without touching the arrays.
+    public static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+
+    private static final class KeyBuilder {
+        private byte[] primary;
+        private byte[] secondary;
+        private int primaryLength;
+        private int secondaryLength;
+
+        KeyBuilder(int chars) {
+            primary = new byte[chars * 2];
+            secondary = new byte[chars];
+        }
+
+        void add(int element) {
+            int p = CollationElementIterator.primaryOrder(element);
+            int s = CollationElementIterator.secondaryOrder(element);
+            if (p == 0 && s == 0) return;  // ignorable at this strength
+            if (p != 0) {
+                if (primaryLength + 2 > primary.length) primary = Arrays.copyOf(primary, primary.length * 2 + 2);
+                primary[primaryLength++] = (byte) (p >>> 8);
+                primary[primaryLength++] = (byte) p;
+            }
+            if (secondaryLength == secondary.length) secondary = Arrays.copyOf(secondary, secondary.length * 2 + 1);
+            secondary[secondaryLength++] = (byte) s;
+        }
+
+        byte[] toBytes() {
+            // Equal primaries mean the same elements, so trailing zeros never decide an order
+            int length = secondaryLength;
+            while (length > 0 && secondary[length - 1] == 0) length--;
+            byte[] key = Arrays.copyOf(primary, primaryLength + 2 + length);
+            System.arraycopy(secondary, 0, key, primaryLength + 2, length);
+            return key;
+        }
+    }
+
+    private static int[][] asciiElements(RuleBasedCollator collator) {
+        int[][] table = new int[128][];
+        for (char c = 0; c < 128; c++) {
+            table[c] = elements(collator, String.valueOf(c));
+        }
+        // A pair that does not collate as its two characters is a contraction
+        for (char a = ' '; a < 127; a++) {
+            for (char b = ' '; b < 127; b++) {
+                int[] pair = elements(collator, "" + a + b);
+                int[] joined = Arrays.copyOf(table[a], table[a].length + table[b].length);
+                System.arraycopy(table[b], 0, joined, table[a].length, table[b].length);
+                if (!Arrays.equals(pair, joined)) return null;
+            }
+        }
+        return table;
+    }
+
+    private static int[] elements(RuleBasedCollator collator, String text) {
+        CollationElementIterator iterator = collator.getCollationElementIterator(text);
+        int[] elements = new int[2];
+        int count = 0;
+        for (int element = iterator.next(); element != CollationElementIterator.NULLORDER; element = iterator.next()) {
+            if (count == elements.length) elements = Arrays.copyOf(elements, count * 2);
+            elements[count++] = element;
+        }
+        return Arrays.copyOf(elements, count);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) return false;
+        }
+        return true;
+    }
+
+    private static RuleBasedCollator newCollator() {
+        Collator collator = Collator.getInstance(LOCALE);
+        // Every JDK locale has a rule-based collator; fall back to the root rules otherwise
+        RuleBasedCollator rules = collator instanceof RuleBasedCollator
+            ? (RuleBasedCollator) collator : (RuleBasedCollator) Collator.getInstance(Locale.ROOT);
+        rules.setStrength(Collator.SECONDARY);
+        rules.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return rules;
+    }
+
+    private static Locale locale() {
+        String tag = System.getProperty("library.collationLocale");
+        return tag != null && !tag.isEmpty() ? Locale.forLanguageTag(tag) : Locale.getDefault();
+    }
+}
@@ -0,0 +1,281 @@
+package library;
+
+import java.util.*;
+
+// Prefix completion over one text field (titles or authors). Normalized texts are
+// kept in a radix trie and every node caches the TOP_N best completions in its
+// subtree, ranked by total borrow count, so a lookup is a walk down the prefix
+// followed by a copy of that node's list, independent of how many texts match.
+//
+// A borrow only raises a score, which can be applied top-down by promoting the
+// entry in each cache on its path. Anything that lowers a score or drops an entry
+// rebuilds the caches on the path bottom-up from the children's lists.
+// Not thread-safe: maintained under LibraryCollection's write lock, read under its
+// read lock.
+public class CompletionIndex {
+    public static final int TOP_N = 10;
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node(new char[0], 0, 0);
+    private int size;
+
+    // A completion: the text as first added, and the borrows of every book carrying it
+    public static class Completion {
+        private final String text;
+        private final long score;
+
+        Completion(String text, long score) {
+            this.text = text;
+            this.score = score;
+        }
+
+        public String getText() { return text; }
+        public long getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return text + " (" + score + ")";
+        }
+    }
+
+    private static final class Entry {
+        final String text;
+        final byte[] sortKey;  // collation key, for alphabetical ties
+        long score;
+        int books;
+
+        Entry(String text) {
+            this.text = text;
+            this.sortKey = CollationKeys.of(text);
+        }
+
+        boolean beats(Entry other) {
+            if (score != other.score) return score > other.score;
+            int order = CollationKeys.compare(sortKey, other.sortKey);
+            return order != 0 ? order < 0 : text.compareTo(other.text) < 0;
+        }
+    }
+
+    private static final class Node {
+        char[] chars;  // the label is chars[start..end)
+        int start;
+        int end;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+        Entry entry;  // completion ending at this node, if any
+        Entry[] top = NO_ENTRIES;  // best first, at most TOP_N
+
+        Node(char[] chars, int start, int end) {
+            this.chars = chars;
+            this.start = start;
+            this.end = end;
+        }
+
+        Node child(char c) {
+            for (int i = 0; i < childCount; i++) {
+                Node child = children[i];
+                if (child.chars[child.start] == c) return child;
+            }
+            return null;
+        }
+
+        void addChild(Node child) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            children[childCount++] = child;
+        }
+
+        void replaceChild(Node old, Node replacement) {
+            for (int i = 0; i < childCount; i++) {
+                if (children[i] == old) children[i] = replacement;
+            }
+        }
+    }
+
+    // A book carrying the text was added, with its current borrow count
+    void add(String text, int borrowCount) {
+        char[] key = FuzzyTitleIndex.normalize(text);
+        if (key.length == 0) return;
+        List<Node> path = new ArrayList<>();
+        Node node = insert(key, path);
+        if (node.entry == null) {
+            node.entry = new Entry(text);
+            size++;
+        }
+        Entry entry = node.entry;
+        entry.books++;
+        entry.score += borrowCount;
+        if (entry.books == 1 || borrowCount > 0) {
+            promote(path, entry);
+        }
+    }
+
+    // A book carrying the text was removed or renamed
+    void remove(String text, int borrowCount) {
+        char[] key = FuzzyTitleIndex.normalize(text);
+        List<Node> path = new ArrayList<>();
+        Node node = find(key, path);
+        if (node == null || node.entry == null) return;
+        Entry entry = node.entry;
+        entry.score -= borrowCount;
+        if (--entry.books == 0) {
+            node.entry = null;
+            size--;
+        }
+        rebuild(path);
+    }
+
+    // The borrow count of a book carrying the text changed by delta
+    void adjust(String text, int delta) {
+        if (delta == 0) return;
+        char[] key = FuzzyTitleIndex.normalize(text);
+        List<Node> path = new ArrayList<>();
+        Node node = find(key, path);
+        if (node == null || node.entry == null) return;
+        node.entry.score += delta;
+        if (delta > 0) {
+            promote(path, node.entry);
+        } else {
+            rebuild(path);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Up to limit (at most TOP_N) completions of the prefix, most borrowed first
+    public List<Completion> complete(String prefix, int limit) {
+        char[] key = FuzzyTitleIndex.normalize(prefix);
+        // A trailing space is significant: "clean " should not offer "cleaner"
+        if (key.length > 0 && Character.isWhitespace(prefix.charAt(prefix.length() - 1))) {
+            key = Arrays.copyOf(key, key.length + 1);
+            key[key.length - 1] = ' ';
+        }
+        Node node = root;
+        int pos = 0;
+        while (pos < key.length) {
+            Node child = node.child(key[pos]);
+            if (child == null) return Collections.emptyList();
+            int i = child.start;
+            while (i < child.end && pos < key.length) {
+                if (child.chars[i++] != key[pos++]) return Collections.emptyList();
+            }
+            node = child;
+        }
+        int count = Math.min(limit, node.top.length);
+        List<Completion> completions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            completions.add(new Completion(node.top[i].text, node.top[i].score));
+        }
+        return completions;
+    }
+
+    // ---------- caches ----------
+
+    // The entry's score went up (or it is new): move it up, or into, each cache on the path
+    private static void promote(List<Node> path, Entry entry) {
+        for (Node node : path) {
+            Entry[] top = node.top;
+            int at = indexOf(top, entry);
+            if (at < 0) {
+                if (top.length < TOP_N) {
+                    top = Arrays.copyOf(top, top.length + 1);
+                    node.top = top;
+                } else if (!entry.beats(top[top.length - 1])) {
+                    continue;
+                }
+                at = top.length - 1;
+                top[at] = entry;
+            }
+            while (at > 0 && entry.beats(top[at - 1])) {
+                top[at] = top[at - 1];
+                top[--at] = entry;
+            }
+        }
+    }
+
+    // Recompute the caches on the path, deepest first, from each node's own entry
+    // and its children's caches
+    private static void rebuild(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            PriorityQueue<Entry> best = new PriorityQueue<>(TOP_N + 1, (a, b) -> a.beats(b) ? 1 : -1);
+            if (node.entry != null) best.add(node.entry);
+            for (int c = 0; c < node.childCount; c++) {
+                for (Entry entry : node.children[c].top) {
+                    best.add(entry);
+                    if (best.size() > TOP_N) best.poll();
+                }
+            }
+            Entry[] top = new Entry[best.size()];
+            for (int k = top.length - 1; k >= 0; k--) top[k] = best.poll();
+            node.top = top;
+        }
+    }
+
+    private static int indexOf(Entry[] top, Entry entry) {
+        for (int i = 0; i < top.length; i++) {
+            if (top[i] == entry) return i;
+        }
+        return -1;
+    }
+
+    // ---------- trie ----------
+
+    // Node spelling exactly the key, created if needed; path receives every node from the root
+    private Node insert(char[] key, List<Node> path) {
+        Node node = root;
+        path.add(node);
+        int pos = 0;
+        while (pos < key.length) {
+            Node child = node.child(key[pos]);
+            if (child == null) {
+                Node leaf = new Node(key, pos, key.length);
+                node.addChild(leaf);
+                path.add(leaf);
+                return leaf;
+            }
+            int common = 0;
+            int length = child.end - child.start;
+            while (common < length && pos + common < key.length
+                    && child.chars[child.start + common] == key[pos + common]) {
+                common++;
+            }
+            if (common < length) {
+                // Split the edge; the new middle node covers the same subtree, so it takes over the cache
+                Node middle = new Node(child.chars, child.start, child.start + common);
+                child.start += common;
+                middle.addChild(child);
+                middle.top = child.top.clone();
+                node.replaceChild(child, middle);
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            pos += common;
+        }
+        return node;
+    }
+
+    private Node find(char[] key, List<Node> path) {
+        Node node = root;
+        path.add(node);
+        int pos = 0;
+        while (pos < key.length) {
+            Node child = node.child(key[pos]);
+            if (child == null) return null;
+            int length = child.end - child.start;
+            if (pos + length > key.length
+                    || !Arrays.equals(child.chars, child.start, child.end, key, pos, pos + length)) {
+                return null;
+            }
+            node = child;
+            path.add(node);
+            pos += length;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,94 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Approximate per-item counts in fixed memory: depth rows of width counters, each
+// item mapped to one counter per row; its estimate is the smallest of those. Never
+// underestimates, and overestimates by at most about e / width of the total count
+// with probability 1 - e^-depth. Adds are conservative (only counters below the new
+// estimate are raised), which keeps collisions from inflating counts much further.
+// Sketches of the same shape merge by adding counters; the sum is still an upper
+// bound on every item's combined count.
+public class CountMinSketch {
+    private final int depth;
+    private final int width;  // a power of two
+    private final long[] counts;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Depth must be positive and width a power of two");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counts = new long[depth * width];
+    }
+
+    // Adds count and returns the item's new estimate
+    public long add(String item, long count) {
+        long hash = Sketches.hash(item);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[cell(hash, row)]);
+        }
+        estimate += count;
+        for (int row = 0; row < depth; row++) {
+            int cell = cell(hash, row);
+            if (counts[cell] < estimate) counts[cell] = estimate;
+        }
+        total += count;
+        return estimate;
+    }
+
+    public long estimate(String item) {
+        long hash = Sketches.hash(item);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counts[cell(hash, row)]);
+        }
+        return min;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) throw new IllegalArgumentException("Shape mismatch");
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    // Sum of all counts added
+    public long getTotal() {
+        return total;
+    }
+
+    // Row positions from two halves of one hash (h1 + row * h2); h2 is made odd so
+    // rows never collapse onto the same column sequence
+    private int cell(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        out.writeLong(total);
+        Sketches.writeSparse(out, counts);
+    }
+
+    static CountMinSketch read(DataInput in) throws IOException {
+        int depth = in.readInt();
+        int width = in.readInt();
+        if (depth <= 0 || depth > 64 || width <= 0 || width > (1 << 24) || Integer.bitCount(width) != 1) {
+            throw new IOException("Corrupt count sketch");
+        }
+        CountMinSketch sketch = new CountMinSketch(depth, width);
+        sketch.total = in.readLong();
+        long[] counts = Sketches.readSparse(in, depth * width);
+        System.arraycopy(counts, 0, sketch.counts, 0, counts.length);
+        return sketch;
+    }
+}
@@ -0,0 +1,328 @@
+package library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Parallel CSV importer: the file is split into byte ranges that are parsed
+// concurrently on a ForkJoinPool, then bulk-loaded through LibraryCollection.addAll.
+//
+// Quoted fields may contain commas, doubled quotes and newlines, so a byte range
+// cannot simply start at its first newline. Parsing therefore runs in two passes:
+//   1. every range counts its quote bytes; a prefix sum of the counts tells each
+//      range whether it begins inside a quoted field
+//   2. every range skips to the first newline outside quotes, then parses each
+//      record that *starts* inside the range, reading past the range end if needed
+public class CsvImporter {
+    private static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+    private static final int DEFAULT_BATCH_SIZE = 50_000;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int FIELD_COUNT = 6;
+
+    // Outcome of an import, including throughput
+    public static class ImportResult {
+        private final long rows;
+        private final long rejected;
+        private final long elapsedNanos;
+
+        ImportResult(long rows, long rejected, long elapsedNanos) {
+            this.rows = rows;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() { return rows; }
+        public long getRejected() { return rejected; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        public long getRowsPerSecond() {
+            return elapsedNanos == 0 ? rows : rows * 1_000_000_000L / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows imported (%d rejected) in %d ms, %d rows/s",
+                                 rows, rejected, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+
+    public static ImportResult importFile(String filename, LibraryCollection<Book> library) throws IOException {
+        return importFile(filename, library, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    public static ImportResult importFile(String filename, LibraryCollection<Book> library,
+                                          ForkJoinPool pool, int chunkSize, int batchSize) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            Chunk[] ranges = new Chunk[chunks];
+            for (int i = 0; i < chunks; i++) {
+                ranges[i] = new Chunk(channel, (long) i * chunkSize, Math.min(size, (long) (i + 1) * chunkSize));
+            }
+
+            // Pass 1: quote parity of every range
+            pool.invoke(new ChunkTask(ranges, 0, chunks, false));
+            throwFailure(ranges);
+            long quotes = 0;
+            for (Chunk chunk : ranges) {
+                chunk.startsInQuotes = (quotes & 1) != 0;
+                quotes += chunk.quoteCount;
+            }
+
+            // Pass 2: parse records owned by each range
+            pool.invoke(new ChunkTask(ranges, 0, chunks, true));
+            throwFailure(ranges);  // before anything is added, so a failed import adds nothing
+
+            long rows = 0;
+            long rejected = 0;
+            for (Chunk chunk : ranges) {
+                List<Book> books = chunk.books;
+                for (int from = 0; from < books.size(); from += batchSize) {
+                    library.addAll(books.subList(from, Math.min(books.size(), from + batchSize)));
+                }
+                rows += books.size();
+                rejected += chunk.rejected;
+                chunk.books = null;
+            }
+            return new ImportResult(rows, rejected, System.nanoTime() - start);
+        }
+    }
+
+    private static void throwFailure(Chunk[] chunks) throws IOException {
+        for (Chunk chunk : chunks) {
+            if (chunk.failure != null) throw chunk.failure;
+        }
+    }
+
+    // Fork/join over a range of chunks; leaves run one pass over a single chunk
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final boolean parse;
+
+        ChunkTask(Chunk[] chunks, int from, int to, boolean parse) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.parse = parse;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(chunks, from, mid, parse), new ChunkTask(chunks, mid, to, parse));
+                return;
+            }
+            Chunk chunk = chunks[from];
+            try {
+                if (parse) {
+                    chunk.parse();
+                } else {
+                    chunk.countQuotes();
+                }
+            } catch (IOException e) {
+                chunk.failure = e;
+            }
+        }
+    }
+
+    // One byte range of the input file
+    private static class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        long quoteCount;
+        boolean startsInQuotes;
+        List<Book> books = new ArrayList<>();
+        long rejected;
+        IOException failure;
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        void countQuotes() throws IOException {
+            ByteReader in = new ByteReader(channel, start, end - start);
+            long count = 0;
+            for (long pos = start; pos < end; pos++) {
+                if (in.next() == '"') count++;
+            }
+            quoteCount = count;
+        }
+
+        void parse() throws IOException {
+            long recordStart = firstRecordStart();
+            if (recordStart >= end) return;
+            ByteReader in = new ByteReader(channel, recordStart, end - recordStart);
+            RecordParser parser = new RecordParser(in);
+            boolean first = start == 0;
+            while (recordStart < end && parser.nextRecord()) {
+                if (parser.isBlank() || (first && parser.isHeader())) {
+                    first = false;
+                    recordStart = in.position();
+                    continue;
+                }
+                first = false;
+                Book book = parser.toBook();
+                if (book != null) {
+                    books.add(book);
+                } else {
+                    rejected++;
+                }
+                recordStart = in.position();
+            }
+        }
+
+        // Position of the first record that starts inside this range
+        private long firstRecordStart() throws IOException {
+            if (start == 0) return 0;
+            ByteReader in = new ByteReader(channel, start - 1, end - start);
+            boolean quoted = startsInQuotes;
+            if (in.next() == '\n' && !quoted) return start;
+            int b;
+            while ((b = in.next()) >= 0) {
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return in.position();
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // Buffered positional reader; does not share state with other ranges
+    private static class ByteReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+        private long filePosition;
+
+        ByteReader(FileChannel channel, long position, long expectedLength) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, Math.max(8192, expectedLength)));
+            this.position = position;
+            this.filePosition = position;
+            buffer.flip();
+        }
+
+        int next() throws IOException {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer, filePosition);
+                buffer.flip();
+                if (read <= 0) return -1;
+                filePosition += read;
+            }
+            position++;
+            return buffer.get() & 0xFF;
+        }
+
+        // Absolute file position of the next byte to be returned
+        long position() { return position; }
+    }
+
+    // RFC 4180 style record parser producing the columns written by exportToCSV:
+    // Title,Author,ISBN,PublishDate,Available,BorrowCount
+    private static class RecordParser {
+        private final ByteReader in;
+        private final String[] fields = new String[FIELD_COUNT];
+        private int fieldCount;
+        private byte[] field = new byte[256];
+        private int fieldLength;
+        private boolean blank;
+
+        RecordParser(ByteReader in) {
+            this.in = in;
+        }
+
+        // True if the last record is the column header line
+        boolean isHeader() {
+            return fieldCount > 0 && "Title".equalsIgnoreCase(fields[0]);
+        }
+
+        // Read one record into fields; returns false at end of input
+        boolean nextRecord() throws IOException {
+            fieldCount = 0;
+            fieldLength = 0;
+            blank = true;
+            boolean quoted = false;
+            boolean justClosed = false;  // last byte closed a quoted section
+            boolean any = false;
+            int b;
+            while ((b = in.next()) >= 0) {
+                any = true;
+                if (quoted) {
+                    if (b == '"') {
+                        quoted = false;
+                        justClosed = true;
+                        continue;
+                    }
+                    append(b);
+                } else if (b == '"') {
+                    if (justClosed) append('"');  // "" inside a quoted field
+                    quoted = true;
+                } else if (b == ',') {
+                    endField();
+                } else if (b == '\n') {
+                    break;
+                } else if (b != '\r') {
+                    append(b);
+                }
+                justClosed = false;
+                if (b != '\r') blank = false;
+            }
+            if (!any) return false;
+            endField();
+            return true;
+        }
+
+        // True if the last record was an empty line
+        boolean isBlank() { return blank; }
+
+        private void append(int b) {
+            if (fieldLength == field.length) {
+                field = Arrays.copyOf(field, field.length * 2);
+            }
+            field[fieldLength++] = (byte) b;
+        }
+
+        private void endField() {
+            if (fieldCount < FIELD_COUNT) {
+                fields[fieldCount] = new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            }
+            fieldCount++;
+            fieldLength = 0;
+        }
+
+        // Convert the current record; null if it is malformed
+        Book toBook() {
+            if (fieldCount != FIELD_COUNT || fields[0].isEmpty()) return null;
+            try {
+                String isbn = fields[2].isEmpty() ? null : fields[2];
+                LocalDate date = fields[3].isEmpty() ? null : LocalDate.parse(fields[3]);
+                Book book = new Book(fields[0], fields[1], isbn, date);
+                book.setAvailable(Boolean.parseBoolean(fields[4]));
+                book.setBorrowCount(fields[5].isEmpty() ? 0 : Integer.parseInt(fields[5]));
+                return book;
+            } catch (DateTimeParseException | NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
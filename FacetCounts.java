@@ -0,0 +1,155 @@
+package library;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Facet counts for one search: for each requested BookFacet, how many matching
+// books fall in each bucket. Computed by LibraryCollection.facets in a single pass
+// over the matching books (or from running totals and indexes when every book
+// matches), never with one groupingBy stream per facet.
+public class FacetCounts {
+    public static final String[] POPULARITY_BANDS = {"never borrowed", "1-5 borrows", "6-20 borrows", "21+ borrows"};
+    static final String[] AVAILABILITY_BUCKETS = {"available", "borrowed"};
+    static final String UNDATED = "undated";
+    static final String UNKNOWN_AUTHOR = "(unknown)";
+
+    private final long total;
+    private final Map<BookFacet, Map<String, Long>> counts;
+
+    private FacetCounts(long total, Map<BookFacet, Map<String, Long>> counts) {
+        this.total = total;
+        this.counts = counts;
+    }
+
+    // Number of matching books
+    public long getTotal() {
+        return total;
+    }
+
+    // Bucket counts for a facet, in display order: authors most books first, decades
+    // oldest first with undated last, availability and popularity bands in their
+    // fixed order (zero counts included). Empty if the facet was not requested.
+    public Map<String, Long> get(BookFacet facet) {
+        return counts.getOrDefault(facet, Collections.emptyMap());
+    }
+
+    public Set<BookFacet> getFacets() {
+        return counts.keySet();
+    }
+
+    // Index into POPULARITY_BANDS for a borrow count
+    static int band(int borrowCount) {
+        if (borrowCount <= 0) return 0;
+        if (borrowCount <= 5) return 1;
+        return borrowCount <= 20 ? 2 : 3;
+    }
+
+    // Decade a date falls in, as its first year
+    static int decade(LocalDate date) {
+        return Math.floorDiv(date.getYear(), 10) * 10;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(total + " book(s)");
+        counts.forEach((facet, buckets) -> out.append("; ").append(facet).append(' ').append(buckets));
+        return out.toString();
+    }
+
+    // Primitive counters for every facet, fed one book at a time; only the facets it
+    // was created for are counted per book, the rest may be filled in directly
+    static final class Counter implements Consumer<Book> {
+        private final boolean author;
+        private final boolean decade;
+        private final boolean availability;
+        private final boolean popularity;
+        long total;
+        final long[] availabilityCounts = new long[AVAILABILITY_BUCKETS.length];
+        final long[] bandCounts = new long[POPULARITY_BANDS.length];
+        private final Map<String, long[]> authorCounts = new HashMap<>();
+        private final Map<Integer, long[]> decadeCounts = new HashMap<>();
+        long undated;
+        // Index buckets hand over one author's books together, so remember the last counter
+        private String lastAuthor;
+        private long[] lastAuthorCount;
+        private int lastDecade;
+        private long[] lastDecadeCount;
+
+        Counter(Set<BookFacet> counted) {
+            author = counted.contains(BookFacet.AUTHOR);
+            decade = counted.contains(BookFacet.DECADE);
+            availability = counted.contains(BookFacet.AVAILABILITY);
+            popularity = counted.contains(BookFacet.POPULARITY);
+        }
+
+        @Override
+        public void accept(Book book) {
+            total++;
+            if (availability) availabilityCounts[book.isAvailable() ? 0 : 1]++;
+            if (popularity) bandCounts[band(book.getBorrowCount())]++;
+            if (author) {
+                String name = book.getAuthor() == null ? "" : book.getAuthor();
+                if (!name.equals(lastAuthor)) {
+                    lastAuthor = name;
+                    lastAuthorCount = authorCounts.computeIfAbsent(name, k -> new long[1]);
+                }
+                lastAuthorCount[0]++;
+            }
+            if (decade) {
+                LocalDate date = book.getPublishDate();
+                if (date == null) {
+                    undated++;
+                } else {
+                    int start = decade(date);
+                    if (lastDecadeCount == null || start != lastDecade) {
+                        lastDecade = start;
+                        lastDecadeCount = decadeCounts.computeIfAbsent(start, k -> new long[1]);
+                    }
+                    lastDecadeCount[0]++;
+                }
+            }
+        }
+
+        void addAuthor(String name, long books) {
+            if (books > 0) authorCounts.computeIfAbsent(name, k -> new long[1])[0] += books;
+        }
+
+        void addDecade(int start, long books) {
+            if (books > 0) decadeCounts.computeIfAbsent(start, k -> new long[1])[0] += books;
+        }
+
+        FacetCounts result(Set<BookFacet> facets) {
+            Map<BookFacet, Map<String, Long>> counts = new EnumMap<>(BookFacet.class);
+            for (BookFacet facet : facets) {
+                Map<String, Long> buckets = new LinkedHashMap<>();
+                switch (facet) {
+                    case AUTHOR:
+                        authorCounts.entrySet().stream()
+                            .sorted(Comparator.comparingLong((Map.Entry<String, long[]> e) -> -e.getValue()[0])
+                                              .thenComparing(e -> CollationKeys.shared(e.getKey())))
+                            .forEach(e -> buckets.put(e.getKey().isEmpty() ? UNKNOWN_AUTHOR : e.getKey(), e.getValue()[0]));
+                        break;
+                    case DECADE:
+                        new TreeMap<>(decadeCounts).forEach((start, n) -> buckets.put(start + "s", n[0]));
+                        if (undated > 0) buckets.put(UNDATED, undated);
+                        break;
+                    case AVAILABILITY:
+                        for (int i = 0; i < AVAILABILITY_BUCKETS.length; i++) {
+                            buckets.put(AVAILABILITY_BUCKETS[i], availabilityCounts[i]);
+                        }
+                        break;
+                    case POPULARITY:
+                        for (int i = 0; i < POPULARITY_BANDS.length; i++) {
+                            buckets.put(POPULARITY_BANDS[i], bandCounts[i]);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                counts.put(facet, Collections.unmodifiableMap(buckets));
+            }
+            return new FacetCounts(total, Collections.unmodifiableMap(counts));
+        }
+    }
+}
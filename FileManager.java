@@ -9,6 +9,11 @@ public class FileManager {
     private static final String BOOKS_FILE = "library_books.dat";
     private static final String STUDENTS_FILE = "library_students.dat";
     private static final String TRANSACTIONS_FILE = "library_transactions.txt";
+    private static final String CATALOG_FILE = "library_catalog.idx";
+    private static final String SNAPSHOT_FILE = "library_snapshot.dat";
+    private static final String JOURNAL_FILE = "library_journal.dat";
+    private static final String ANALYTICS_FILE = "library_analytics.dat";
+    private static final String COBORROW_FILE = "library_coborrow.dat";
 
     // Save books to file using serialization
     public static void saveBooks(List<Book> books, String filename) {
@@ -36,6 +41,37 @@ public class FileManager {
         }
     }
 
+    // Save books in the memory-mappable catalog layout
+    public static boolean saveCatalog(List<Book> books, String filename) {
+        try {
+            MappedCatalog.write(books, filename);
+            System.out.println("✓ Catalog written to " + filename);
+            return true;
+        } catch (IOException e) {
+            System.err.println("✗ Error writing catalog: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Map a catalog file; books are only decoded when they are accessed
+    public static MappedCatalog openCatalog(String filename) {
+        if (!new File(filename).exists()) {
+            System.out.println("ℹ No catalog file found.");
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            MappedCatalog catalog = MappedCatalog.open(filename);
+            long micros = (System.nanoTime() - start) / 1_000;
+            System.out.println("✓ Catalog mapped from " + filename + " (" + catalog.size()
+                + " titles in " + micros + " µs)");
+            return catalog;
+        } catch (IOException e) {
+            System.err.println("✗ Error opening catalog: " + e.getMessage());
+            return null;
+        }
+    }
+
     // Save transaction log to text file
     public static void logTransaction(String transaction) {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(TRANSACTIONS_FILE, true))) {
@@ -69,27 +105,50 @@ public class FileManager {
         return transactions;
     }
 
-    // Export books to CSV format
+    // Export books to CSV format (gzip-compressed when the filename ends in .gz)
     public static void exportToCSV(List<Book> books, String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            writer.println("Title,Author,ISBN,PublishDate,Available,BorrowCount");
-            
-            for (Book book : books) {
-                writer.printf("\"%s\",\"%s\",\"%s\",\"%s\",%b,%d%n",
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getIsbn() != null ? book.getIsbn() : "",
-                    book.getPublishDate() != null ? book.getPublishDate().toString() : "",
-                    book.isAvailable(),
-                    book.getBorrowCount()
-                );
-            }
+        try {
+            CatalogExporter.export(books, filename, CatalogExporter.Format.CSV, filename.endsWith(".gz"));
             System.out.println("✓ Books exported to " + filename);
         } catch (IOException e) {
             System.err.println("✗ Error exporting to CSV: " + e.getMessage());
         }
     }
 
+    // Export books as JSON Lines, one object per book (gzip-compressed when the filename ends in .gz)
+    public static void exportToJsonLines(List<Book> books, String filename) {
+        try {
+            CatalogExporter.export(books, filename, CatalogExporter.Format.JSON_LINES, filename.endsWith(".gz"));
+            System.out.println("✓ Books exported to " + filename);
+        } catch (IOException e) {
+            System.err.println("✗ Error exporting to JSON Lines: " + e.getMessage());
+        }
+    }
+
+    // Import books from CSV (parallel, chunked) into a collection
+    public static void importFromCSV(String filename, LibraryCollection<Book> library) {
+        try {
+            CsvImporter.ImportResult result = CsvImporter.importFile(filename, library);
+            System.out.println("✓ " + result);
+        } catch (FileNotFoundException | java.nio.file.NoSuchFileException e) {
+            System.out.println("ℹ CSV file not found: " + filename);
+        } catch (IOException e) {
+            System.err.println("✗ Error importing CSV: " + e.getMessage());
+        }
+    }
+
+    // Import books from JSON Lines (streamed, gzip when the filename ends in .gz) into a collection
+    public static void importFromJsonLines(String filename, LibraryCollection<Book> library) {
+        try {
+            CsvImporter.ImportResult result = JsonLinesReader.importFile(filename, library);
+            System.out.println("✓ " + result);
+        } catch (FileNotFoundException e) {
+            System.out.println("ℹ JSON Lines file not found: " + filename);
+        } catch (IOException e) {
+            System.err.println("✗ Error importing JSON Lines: " + e.getMessage());
+        }
+    }
+
     // Clear transaction log
     public static void clearTransactionLog() {
         File file = new File(TRANSACTIONS_FILE);
@@ -102,4 +161,9 @@ public class FileManager {
     public static String getBooksFile() { return BOOKS_FILE; }
     public static String getStudentsFile() { return STUDENTS_FILE; }
     public static String getTransactionsFile() { return TRANSACTIONS_FILE; }
+    public static String getCatalogFile() { return CATALOG_FILE; }
+    public static String getSnapshotFile() { return SNAPSHOT_FILE; }
+    public static String getJournalFile() { return JOURNAL_FILE; }
+    public static String getAnalyticsFile() { return ANALYTICS_FILE; }
+    public static String getCoBorrowFile() { return COBORROW_FILE; }
 }
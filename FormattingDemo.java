@@ -188,14 +188,7 @@ public class FormattingDemo {
     }
     
     private static String formatBookJSON(Book book) {
-        return String.format(
-            "{ \"title\": \"%s\", \"author\": \"%s\", \"isbn\": \"%s\", \"available\": %b, \"borrows\": %d }",
-            book.getTitle(),
-            book.getAuthor(),
-            book.getIsbn() != null ? book.getIsbn() : "",
-            book.isAvailable(),
-            book.getBorrowCount()
-        );
+        return CatalogExporter.toJson(book);
     }
     
     /**
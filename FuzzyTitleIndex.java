@@ -0,0 +1,308 @@
+package library;
+
+import java.text.Normalizer;
+import java.util.*;
+
+// Typo-tolerant title lookup. Normalized titles are kept in a radix trie stored in
+// parallel int arrays; a search walks the trie carrying one row of the Levenshtein
+// matrix per character, which is what a Levenshtein automaton does. Every title
+// under a trie node shares the node's prefix, so once the smallest value in the
+// row exceeds the allowed distance the whole subtree is skipped. Only the handful
+// of prefixes that stay within k edits of the query are ever expanded.
+//
+// Edge labels are slices of the normalized title that created them, so the trie
+// adds no character storage of its own. Not thread-safe: maintained under
+// LibraryCollection's write lock, read under its read lock.
+public class FuzzyTitleIndex<T extends Book> {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // Distinct normalized titles; the id of a title indexes keys and books
+    private char[][] keys = new char[16][];
+    private Object[] books = new Object[16];  // a book, an ArrayList of books, or null once all are removed
+    private int titleCount;
+
+    // Trie nodes; the label of a node is keys[label][start..end)
+    private int[] label = new int[32];
+    private int[] start = new int[32];
+    private int[] end = new int[32];
+    private int[] firstChild = new int[32];
+    private int[] nextSibling = new int[32];
+    private int[] title = new int[32];  // id of the title ending at this node, or NONE
+    private int nodeCount;
+
+    // A title within the search distance, with every book carrying it
+    public static class Match<T> {
+        private final String title;
+        private final int distance;
+        private final List<T> books;
+
+        Match(String title, int distance, List<T> books) {
+            this.title = title;
+            this.distance = distance;
+            this.books = books;
+        }
+
+        public String getTitle() { return title; }  // normalized form
+        public int getDistance() { return distance; }
+        public List<T> getBooks() { return books; }
+    }
+
+    public FuzzyTitleIndex() {
+        newNode(NONE, 0, 0);  // root, empty label
+    }
+
+    void add(T book) {
+        char[] key = normalize(book.getTitle());
+        if (key.length == 0) return;
+        int id = insert(key);
+        Object current = books[id];
+        if (current == null) {
+            books[id] = book;
+        } else if (current instanceof ArrayList) {
+            @SuppressWarnings("unchecked")
+            List<T> list = (List<T>) current;
+            list.add(book);
+        } else {
+            List<Object> list = new ArrayList<>(2);
+            list.add(current);
+            list.add(book);
+            books[id] = list;
+        }
+    }
+
+    // The title stays in the trie even when its last book goes
+    void remove(T book) {
+        int node = find(normalize(book.getTitle()));
+        if (node == NONE || title[node] == NONE) return;
+        int id = title[node];
+        Object current = books[id];
+        if (current == book) {
+            books[id] = null;
+        } else if (current instanceof ArrayList) {
+            List<?> list = (List<?>) current;
+            list.removeIf(b -> b == book);
+            if (list.isEmpty()) books[id] = null;
+            else if (list.size() == 1) books[id] = list.get(0);
+        }
+    }
+
+    public int titleCount() {
+        return titleCount;
+    }
+
+    // Titles within maxDistance edits of the query, closest first
+    public List<Match<T>> search(String text, int maxDistance) {
+        char[] query = normalize(text);
+        List<Match<T>> matches = new ArrayList<>();
+        if (query.length == 0) return matches;
+
+        int columns = query.length + 1;
+        int[][] rows = new int[query.length + maxDistance + 2][];
+        rows[0] = new int[columns];
+        for (int i = 0; i < columns; i++) rows[0][i] = i;
+
+        // Depth-first over the trie; depth is the number of characters consumed
+        int[] stackNode = new int[64];
+        int[] stackDepth = new int[64];
+        int top = 0;
+        for (int child = firstChild[ROOT]; child != NONE; child = nextSibling[child]) {
+            stackNode[top] = child;
+            stackDepth[top++] = 0;
+        }
+        while (top > 0) {
+            int node = stackNode[--top];
+            int depth = stackDepth[top];
+            char[] chars = keys[label[node]];
+            boolean alive = true;
+            for (int i = start[node]; i < end[node]; i++) {
+                // A prefix longer than query + k can never come back within k edits
+                if (depth + 1 >= rows.length) {
+                    alive = false;
+                    break;
+                }
+                if (rows[depth + 1] == null) rows[depth + 1] = new int[columns];
+                if (nextRow(rows[depth], rows[depth + 1], query, chars[i]) > maxDistance) {
+                    alive = false;
+                    break;
+                }
+                depth++;
+            }
+            if (!alive) continue;
+
+            int distance = rows[depth][query.length];
+            if (title[node] != NONE && distance <= maxDistance && books[title[node]] != null) {
+                matches.add(new Match<>(new String(keys[title[node]]), distance, booksOf(title[node])));
+            }
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                if (top == stackNode.length) {
+                    stackNode = Arrays.copyOf(stackNode, top * 2);
+                    stackDepth = Arrays.copyOf(stackDepth, top * 2);
+                }
+                stackNode[top] = child;
+                stackDepth[top++] = depth;
+            }
+        }
+        matches.sort(Comparator.comparingInt((Match<T> m) -> m.distance).thenComparing(m -> m.title));
+        return matches;
+    }
+
+    // Fill the Levenshtein row for one more trie character; returns the row minimum
+    private static int nextRow(int[] previous, int[] row, char[] query, char c) {
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int value = previous[j - 1] + (query[j - 1] == c ? 0 : 1);
+            int delete = previous[j] + 1;
+            int insert = row[j - 1] + 1;
+            if (delete < value) value = delete;
+            if (insert < value) value = insert;
+            row[j] = value;
+            if (value < min) min = value;
+        }
+        return min;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> booksOf(int id) {
+        Object current = books[id];
+        return current instanceof ArrayList ? new ArrayList<>((List<T>) current)
+                                            : Collections.singletonList((T) current);
+    }
+
+    // ---------- trie maintenance ----------
+
+    // Id of the key's title, adding the title (and splitting an edge if needed) when new
+    private int insert(char[] key) {
+        int node = ROOT;
+        int pos = 0;
+        while (pos < key.length) {
+            int previous = NONE;
+            int child = firstChild[node];
+            while (child != NONE && keys[label[child]][start[child]] != key[pos]) {
+                previous = child;
+                child = nextSibling[child];
+            }
+            if (child == NONE) {
+                int id = newTitle(key);
+                int leaf = newNode(id, pos, key.length);
+                title[leaf] = id;
+                nextSibling[leaf] = firstChild[node];
+                firstChild[node] = leaf;
+                return id;
+            }
+            char[] chars = keys[label[child]];
+            int common = 0;
+            int length = end[child] - start[child];
+            while (common < length && pos + common < key.length
+                    && chars[start[child] + common] == key[pos + common]) {
+                common++;
+            }
+            if (common < length) {
+                // Split: a new node takes the shared part of the label, the old node keeps the rest
+                int middle = newNode(label[child], start[child], start[child] + common);
+                start[child] += common;
+                firstChild[middle] = child;
+                nextSibling[middle] = nextSibling[child];
+                nextSibling[child] = NONE;
+                if (previous == NONE) firstChild[node] = middle;
+                else nextSibling[previous] = middle;
+                child = middle;
+            }
+            node = child;
+            pos += common;
+        }
+        if (title[node] == NONE) title[node] = newTitle(key);
+        return title[node];
+    }
+
+    // Node whose path spells exactly the key, or NONE
+    private int find(char[] key) {
+        int node = ROOT;
+        int pos = 0;
+        while (pos < key.length) {
+            int child = firstChild[node];
+            while (child != NONE && keys[label[child]][start[child]] != key[pos]) {
+                child = nextSibling[child];
+            }
+            if (child == NONE) return NONE;
+            int length = end[child] - start[child];
+            if (pos + length > key.length
+                    || !Arrays.equals(keys[label[child]], start[child], end[child], key, pos, pos + length)) {
+                return NONE;
+            }
+            node = child;
+            pos += length;
+        }
+        return node;
+    }
+
+    private int newTitle(char[] key) {
+        if (titleCount == keys.length) {
+            keys = Arrays.copyOf(keys, titleCount * 2);
+            books = Arrays.copyOf(books, titleCount * 2);
+        }
+        keys[titleCount] = key;
+        return titleCount++;
+    }
+
+    private int newNode(int labelTitle, int from, int to) {
+        if (nodeCount == label.length) {
+            int capacity = nodeCount * 2;
+            label = Arrays.copyOf(label, capacity);
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            title = Arrays.copyOf(title, capacity);
+        }
+        label[nodeCount] = labelTitle;
+        start[nodeCount] = from;
+        end[nodeCount] = to;
+        firstChild[nodeCount] = NONE;
+        nextSibling[nodeCount] = NONE;
+        title[nodeCount] = NONE;
+        return nodeCount++;
+    }
+
+    // ---------- text ----------
+
+    // Levenshtein distance between two normalized titles
+    static int distance(char[] a, char[] b) {
+        int[] previous = new int[a.length + 1];
+        int[] row = new int[a.length + 1];
+        for (int i = 0; i <= a.length; i++) previous[i] = i;
+        for (char c : b) {
+            nextRow(previous, row, a, c);
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[a.length];
+    }
+
+    // Lower case, accents removed, runs of punctuation and spaces collapsed to one space
+    static char[] normalize(String text) {
+        if (text == null) return new char[0];
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        char[] out = new char[text.length()];
+        int length = 0;
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && length > 0) out[length++] = ' ';
+                out[length++] = Character.toLowerCase(c);
+                space = false;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                space = true;
+            }
+        }
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+}
@@ -0,0 +1,274 @@
+package library;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+// Default in-heap store: insertion-ordered list plus ISBN-ordered maps. ISBNs that
+// pack (see IsbnCodes) are keyed by their code, whose order is the ISBN order, so
+// the map holds no String per book and never decodes one; the rare rest are keyed
+// by text, and ISBN-order scans merge the two. A key maps to its book, or to Copies
+// when several books share the ISBN, so every copy stays reachable in ISBN order.
+public class HeapBookStore<T extends Book> implements BookStore<T> {
+    private final ChunkedList<T> books = new ChunkedList<>();
+    private final NavigableMap<Long, Object> booksByIsbn = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, Object> booksByIsbnText = new ConcurrentSkipListMap<>();
+    private final BookIndexes<T> indexes = new BookIndexes<>();
+
+    @Override
+    public void add(T book) {
+        book.storePosition = books.size();
+        books.add(book);
+        putIsbn(book);
+        indexes.add(book);
+    }
+
+    // Books live in the heap, so only the ISBN key and the indexes need maintaining
+    @Override
+    public void beforeChange(T book, BookField field) {
+        if (field == BookField.ISBN) {
+            long code = book.isbnCode();
+            if (code != 0) {
+                booksByIsbn.computeIfPresent(code, (k, current) -> Copies.without(current, book));
+            } else if (book.getIsbn() != null) {
+                booksByIsbnText.computeIfPresent(book.getIsbn(), (k, current) -> Copies.without(current, book));
+            }
+        }
+        indexes.beforeChange(book, field);
+    }
+
+    @Override
+    public void afterChange(T book, BookField field) {
+        if (field == BookField.ISBN) putIsbn(book);
+        indexes.afterChange(book, field);
+    }
+
+    // A book with an ISBN already present joins the other copies
+    private void putIsbn(T book) {
+        long code = book.isbnCode();
+        if (code != 0) {
+            booksByIsbn.merge(code, book, Copies::with);
+        } else if (book.getIsbn() != null) {
+            booksByIsbnText.merge(book.getIsbn(), book, Copies::with);
+        }
+    }
+
+    private Object copiesOf(String isbn) {
+        long code = IsbnCodes.pack(isbn);
+        return code != 0 ? booksByIsbn.get(code) : booksByIsbnText.get(isbn);
+    }
+
+    // The first copy added, as with LsmBookStore
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<T> findByIsbn(String isbn) {
+        if (isbn == null) return Optional.empty();
+        Object found = copiesOf(isbn);
+        return Optional.ofNullable((T) (found instanceof Copies ? ((Copies) found).books[0] : found));
+    }
+
+    @Override
+    public List<T> scanByIsbn(String afterIsbn, int limit) {
+        return scanIsbnOrder(afterIsbn, Integer.MAX_VALUE, limit);
+    }
+
+    // Copies of afterIsbn stored after afterPosition (MAX_VALUE: none), then the books
+    // with greater ISBNs
+    private List<T> scanIsbnOrder(String afterIsbn, int afterPosition, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit, 1024));
+        if (afterIsbn != null && afterPosition != Integer.MAX_VALUE) {
+            addCopies(page, copiesOf(afterIsbn), afterPosition, limit);
+        }
+        Iterator<Map.Entry<Long, Object>> packed = (afterIsbn == null ? booksByIsbn
+            : booksByIsbn.tailMap(IsbnCodes.after(afterIsbn), true)).entrySet().iterator();
+        Iterator<Map.Entry<String, Object>> text = (afterIsbn == null ? booksByIsbnText
+            : booksByIsbnText.tailMap(afterIsbn, false)).entrySet().iterator();
+        Map.Entry<Long, Object> nextPacked = packed.hasNext() ? packed.next() : null;
+        Map.Entry<String, Object> nextText = text.hasNext() ? text.next() : null;
+        while (page.size() < limit && (nextPacked != null || nextText != null)) {
+            // Packed codes are only decoded while text ISBNs remain to merge with
+            if (nextText == null
+                || nextPacked != null && IsbnCodes.unpack(nextPacked.getKey()).compareTo(nextText.getKey()) < 0) {
+                addCopies(page, nextPacked.getValue(), -1, limit);
+                nextPacked = packed.hasNext() ? packed.next() : null;
+            } else {
+                addCopies(page, nextText.getValue(), -1, limit);
+                nextText = text.hasNext() ? text.next() : null;
+            }
+        }
+        return page;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void addCopies(List<T> page, Object value, int afterPosition, int limit) {
+        if (value instanceof Copies) {
+            for (Book book : ((Copies) value).books) {
+                if (page.size() == limit) return;
+                if (book.storePosition > afterPosition) page.add((T) book);
+            }
+        } else if (value != null && page.size() < limit && ((Book) value).storePosition > afterPosition) {
+            page.add((T) value);
+        }
+    }
+
+    @Override
+    public List<T> scan(BookOrder order, String cursor, int limit) {
+        switch (order) {
+            case STORAGE:
+                int from = cursor == null ? 0 : parsePosition(cursor) + 1;
+                int to = (int) Math.min(books.size(), (long) from + limit);
+                List<T> page = new ArrayList<>(Math.max(0, to - from));
+                for (int i = from; i < to; i++) {
+                    page.add(books.get(i));
+                }
+                return page;
+            case POPULARITY:
+                return indexes.scanByPopularity(cursor, limit);
+            case PUBLISH_DATE:
+                return indexes.scanByPublishDate(cursor, limit);
+            default:
+                if (cursor == null) return scanByIsbn(null, limit);
+                int colon = cursor.lastIndexOf(':');
+                if (colon < 0) throw new IllegalArgumentException("Invalid page token");
+                return scanIsbnOrder(cursor.substring(0, colon), parsePosition(cursor.substring(colon + 1)), limit);
+        }
+    }
+
+    @Override
+    public String cursorOf(BookOrder order, T book) {
+        switch (order) {
+            case STORAGE:
+                return String.valueOf(book.storePosition);
+            case POPULARITY:
+            case PUBLISH_DATE:
+                return BookIndexes.cursorOf(order, book);
+            default:
+                return book.getIsbn() + ":" + book.storePosition;  // "isbn:position", so copies are not skipped
+        }
+    }
+
+    private static int parsePosition(String cursor) {
+        try {
+            return Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        books.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return books.size();
+    }
+
+    @Override
+    public BookIndexes<T> indexes() {
+        return indexes;
+    }
+
+    // O(1): a prefix of the append-only list
+    @Override
+    public List<T> frozenView() {
+        return books.prefix();
+    }
+
+    // Books sharing an ISBN, in store position order. Replaced rather than modified,
+    // so a merge or compute that retries never applies a change twice.
+    private static final class Copies {
+        final Book[] books;
+
+        private Copies(Book[] books) {
+            this.books = books;
+        }
+
+        // Map merge function: current value plus one more book
+        static Object with(Object current, Object added) {
+            Book book = (Book) added;
+            Book[] old = current instanceof Copies ? ((Copies) current).books : new Book[] {(Book) current};
+            Book[] books = new Book[old.length + 1];
+            int at = 0;
+            while (at < old.length && old[at].storePosition < book.storePosition) at++;
+            System.arraycopy(old, 0, books, 0, at);
+            books[at] = book;
+            System.arraycopy(old, at, books, at + 1, old.length - at);
+            return new Copies(books);
+        }
+
+        // Current value without book; null once nothing is left
+        static Object without(Object current, Book book) {
+            if (current == book) return null;
+            if (!(current instanceof Copies)) return current;
+            Book[] old = ((Copies) current).books;
+            Book[] books = new Book[old.length - 1];
+            int kept = 0;
+            for (Book copy : old) {
+                if (copy != book) {
+                    if (kept == books.length) return current;  // book is not among them
+                    books[kept++] = copy;
+                }
+            }
+            return books.length == 1 ? books[0] : new Copies(books);
+        }
+    }
+
+    // Append-only list made of fixed-size chunks. Chunks never move once allocated,
+    // so a prefix captured under the write lock stays valid, and safe to read from
+    // another thread, while later adds fill the tail.
+    private static class ChunkedList<T> {
+        private static final int CHUNK_BITS = 14;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private Object[][] chunks = new Object[4][];
+        private int size;
+
+        void add(T item) {
+            int chunk = size >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Object[CHUNK_SIZE];
+            }
+            chunks[chunk][size & (CHUNK_SIZE - 1)] = item;
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int index) {
+            return (T) chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        void forEach(Consumer<? super T> action) {
+            for (int i = 0; i < size; i++) {
+                action.accept((T) chunks[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)]);
+            }
+        }
+
+        List<T> prefix() {
+            Object[][] frozenChunks = chunks;
+            int frozenSize = size;
+            return new AbstractList<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public T get(int index) {
+                    Objects.checkIndex(index, frozenSize);
+                    return (T) frozenChunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+                }
+
+                @Override
+                public int size() {
+                    return frozenSize;
+                }
+            };
+        }
+    }
+}
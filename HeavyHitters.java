@@ -0,0 +1,104 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+// Approximate most frequent items: a Count-Min Sketch for the counts plus a bounded
+// list of candidates, the items with the largest estimates seen so far. An item that
+// drops off the list keeps its count in the sketch and is back on with its full
+// estimate once that passes the smallest estimate the list kept. Merging merges the sketches and re-estimates the
+// union of both candidate lists, so an item that was frequent in either window is
+// ranked by its count over both.
+public class HeavyHitters {
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final Map<String, Long> candidates = new HashMap<>();
+    private long threshold;  // smallest estimate kept by the last trim
+
+    public HeavyHitters(int capacity, int depth, int width) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.sketch = new CountMinSketch(depth, width);
+    }
+
+    private HeavyHitters(int capacity, CountMinSketch sketch) {
+        this.capacity = capacity;
+        this.sketch = sketch;
+    }
+
+    public void add(String item) {
+        long estimate = sketch.add(item, 1);
+        if (estimate <= threshold && !candidates.containsKey(item)) return;
+        candidates.put(item, estimate);
+        // Trimmed in batches so each add stays O(1) amortized
+        if (candidates.size() > 2 * capacity) trim(capacity);
+    }
+
+    // Estimated count of any item, listed or not
+    public long estimate(String item) {
+        return sketch.estimate(item);
+    }
+
+    public long getTotal() {
+        return sketch.getTotal();
+    }
+
+    // Up to n items with the largest estimates, largest first (n at most the capacity)
+    public Map<String, Long> top(int n) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : ranked()) {
+            if (top.size() >= Math.min(n, capacity)) break;
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    public void merge(HeavyHitters other) {
+        sketch.merge(other.sketch);
+        Set<String> union = new HashSet<>(candidates.keySet());
+        union.addAll(other.candidates.keySet());
+        candidates.clear();
+        for (String item : union) {
+            candidates.put(item, sketch.estimate(item));
+        }
+        if (candidates.size() > 2 * capacity) trim(capacity);
+    }
+
+    private List<Map.Entry<String, Long>> ranked() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return entries;
+    }
+
+    private void trim(int keep) {
+        List<Map.Entry<String, Long>> entries = ranked();
+        for (Map.Entry<String, Long> entry : entries.subList(keep, entries.size())) {
+            candidates.remove(entry.getKey());
+        }
+        threshold = entries.get(keep - 1).getValue();
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        sketch.write(out);
+        out.writeInt(candidates.size());
+        for (String item : candidates.keySet()) {
+            BookCodec.writeString(out, item);
+        }
+    }
+
+    static HeavyHitters read(DataInput in) throws IOException {
+        int capacity = in.readInt();
+        if (capacity <= 0) throw new IOException("Corrupt heavy-hitters list");
+        CountMinSketch sketch = CountMinSketch.read(in);
+        HeavyHitters hitters = new HeavyHitters(capacity, sketch);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String item = BookCodec.readString(in);
+            hitters.candidates.put(item, sketch.estimate(item));
+        }
+        return hitters;
+    }
+}
@@ -1,9 +1,14 @@
 package library;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class InteractiveLibrary {
     private static LibraryCollection<Book> library = new LibraryCollection<>();
@@ -13,14 +18,127 @@ public class InteractiveLibrary {
     private static int nextStudentId = 1001;
     private static int nextStaffId = 2001;
     private static final String AUTO_SAVE_FILE = "library_export.csv";
+    // Memory-mapped catalog, null if none saved yet. A side index for ISBN lookups that
+    // miss the working set; the working set itself is still recovered from the snapshot.
+    private static MappedCatalog catalog;
+    private static TransactionJournal journal;  // null if recovery failed (journaling disabled)
+    private static int journaledSinceCheckpoint = 0;
+    private static BackgroundSnapshotter snapshotter;  // null when journaling is disabled
+    private static PatronRegistry patrons;  // null if the registry file could not be opened
+    private static TransactionAnalytics analytics = new TransactionAnalytics();  // borrow sketches by day
+    private static CoBorrowIndex recommendations = new CoBorrowIndex();  // "also borrowed" matrix
+    private static final int CHECKPOINT_INTERVAL = 500;
+    private static final int PAGE_SIZE = 20;  // books per page in listings
+    private static final int MAX_SUGGESTIONS = 5;  // fuzzy title matches offered
+    private static final int FIRST_MATCHES = 20;  // matches shown by the lambda searches
+    private static final int MAX_FACET_BUCKETS = 5;  // buckets listed per facet in search results
+    private static final int MAX_RECOMMENDATIONS = 3;  // "also borrowed" books shown at the desk
     
     // Auto-save library to CSV after changes
     private static void autoSaveLibrary() {
         FileManager.exportToCSV(library.getAllBooks(), AUTO_SAVE_FILE);
     }
 
+    // Append to the recovery journal and feed the analytics; take a snapshot (and save
+    // the analytics) every CHECKPOINT_INTERVAL records
+    private static void journal(TransactionJournal.Type type, int patronId, Book book) {
+        analytics.record(type, patronId, book);
+        long lsn = 0;
+        if (journal != null) {
+            try {
+                lsn = journal.append(type, patronId, book);
+            } catch (IOException e) {
+                System.err.println("✗ Error writing journal: " + e.getMessage());
+            }
+        }
+        // Counted with its LSN, so recovery replays exactly the loans the saved index lacks
+        if (type == TransactionJournal.Type.BORROW) recommendations.recordBorrow(patronId, book.getIsbn(), lsn);
+        // Written in the background; if the previous snapshot is still running, try again next time
+        if (lsn != 0 && ++journaledSinceCheckpoint >= CHECKPOINT_INTERVAL && snapshotter.request()) {
+            journaledSinceCheckpoint = 0;
+            saveAnalytics();
+        }
+    }
+
+    // Snapshot the catalog so recovery only replays records written after this point.
+    // The snapshot is written in the background; only an earlier one still in progress is waited for.
+    private static void checkpoint() {
+        if (snapshotter == null) return;
+        snapshotter.awaitIdle();
+        snapshotter.request();
+        journaledSinceCheckpoint = 0;
+    }
+
+    private static void saveAnalytics() {
+        try {
+            analytics.save(FileManager.getAnalyticsFile());
+        } catch (IOException e) {
+            System.err.println("✗ Error saving analytics: " + e.getMessage());
+        }
+    }
+
+    // On exit. Otherwise the snapshotter saves the index with every checkpoint, and
+    // recovery replays the loans journaled since.
+    private static void saveRecommendations() {
+        try {
+            recommendations.save(FileManager.getCoBorrowFile());
+        } catch (IOException e) {
+            System.err.println("✗ Error saving borrow history: " + e.getMessage());
+        }
+    }
+
+    private static void loadAnalytics() {
+        try {
+            analytics = TransactionAnalytics.load(FileManager.getAnalyticsFile());
+        } catch (IOException e) {
+            System.err.println("✗ Error loading analytics, starting empty: " + e.getMessage());
+        }
+        try {
+            recommendations = CoBorrowIndex.load(FileManager.getCoBorrowFile());
+        } catch (IOException e) {
+            System.err.println("✗ Error loading borrow history, starting empty: " + e.getMessage());
+        }
+    }
+
+    // Final snapshot on exit, written on this thread. The index is saved after any
+    // background checkpoint finishes, so an older image cannot replace it, and before
+    // the journal is truncated.
+    private static void closeJournal() {
+        if (journal == null) {
+            saveRecommendations();
+            return;
+        }
+        snapshotter.close();
+        saveRecommendations();
+        try {
+            RecoveryManager.checkpoint(library, journal, FileManager.getSnapshotFile());
+        } catch (IOException e) {
+            System.err.println("✗ Error writing snapshot: " + e.getMessage());
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("✗ Error closing journal: " + e.getMessage());
+        }
+    }
+
+    // Releases the mapped catalog's channel before it is replaced or on exit
+    private static void closeCatalog() {
+        if (catalog == null) return;
+        try {
+            catalog.close();
+        } catch (IOException e) {
+            System.err.println("✗ Error closing catalog: " + e.getMessage());
+        }
+        catalog = null;
+    }
+
     public static void main(String[] args) {
-        initializeLibrary();
+        BookFilters.calibrateInBackground();  // measured while the catalog loads
+        loadAnalytics();  // before recovery, which brings the co-borrow index up to date
+        recoverLibrary();
+        loadPatrons();
+        catalog = FileManager.openCatalog(FileManager.getCatalogFile());
         System.out.println("╔════════════════════════════════════════════╗");
         System.out.println("║   WELCOME TO LIBRARY MANAGEMENT SYSTEM     ║");
         System.out.println("╚════════════════════════════════════════════╝\n");
@@ -55,6 +173,16 @@ public class InteractiveLibrary {
             }
         }
         scanner.close();
+        closeCatalog();
+        if (patrons != null) {
+            try {
+                patrons.close();
+            } catch (IOException e) {
+                System.err.println("✗ Error closing patron registry: " + e.getMessage());
+            }
+        }
+        saveAnalytics();
+        closeJournal();
     }
 
     private static void displayMainMenu() {
@@ -76,6 +204,7 @@ public class InteractiveLibrary {
         System.out.println("3. View Available Books");
         System.out.println("4. Search Book by Title");
         System.out.println("5. Search Book by ISBN");
+        System.out.println("6. Query Books (e.g. author:martin available:true borrows>=5)");
         System.out.println("0. Back to Main Menu");
 
         int choice = getIntInput("Enter your choice: ");
@@ -96,6 +225,9 @@ public class InteractiveLibrary {
             case 5:
                 searchBookByISBN();
                 break;
+            case 6:
+                queryBooks();
+                break;
             case 0:
                 return;
             default:
@@ -122,8 +254,7 @@ public class InteractiveLibrary {
             return;
         }
         
-        System.out.print("Enter author name: ");
-        String author = scanner.nextLine();
+        String author = readWithCompletion("Enter author name (end with ? for existing authors): ", library::completeAuthor);
         
         // Validate author name
         if (!ValidationUtils.isValidName(author)) {
@@ -160,6 +291,7 @@ public class InteractiveLibrary {
 
         Book book = new Book(title, author, isbn, publishDate);
         library.addBook(book);
+        journal(TransactionJournal.Type.ADD_BOOK, 0, book);
         autoSaveLibrary();  // Auto-save after adding book
         FileManager.logTransaction("Added book: " + title + " by " + author);
         System.out.println("✓ Book added successfully!\n");
@@ -167,34 +299,23 @@ public class InteractiveLibrary {
 
     private static void viewAllBooks() {
         System.out.println("\n--- ALL BOOKS IN LIBRARY ---");
-        List<Book> books = library.getAllBooks();
-        if (books.isEmpty()) {
+        if (library.size() == 0) {
             System.out.println("No books in library.\n");
             return;
         }
         
-        System.out.println("Total books: " + books.size());
+        System.out.println("Total books: " + library.size());
         System.out.println("─────────────────────────────────────────");
-        for (int i = 0; i < books.size(); i++) {
-            System.out.println((i + 1) + ". " + books.get(i));
-        }
-        System.out.println();
+        showPages(token -> library.page(BookOrder.STORAGE, token, PAGE_SIZE));
     }
 
     private static void viewAvailableBooks() {
         System.out.println("\n--- AVAILABLE BOOKS ---");
-        List<Book> available = library.getAvailableBooks();
-        if (available.isEmpty()) {
-            System.out.println("No books available.\n");
-            return;
-        }
-        
-        System.out.println("Available books: " + available.size());
         System.out.println("─────────────────────────────────────────");
-        for (int i = 0; i < available.size(); i++) {
-            System.out.println((i + 1) + ". " + available.get(i));
+        int shown = showPages(token -> library.page(BookOrder.STORAGE, token, PAGE_SIZE, Book::isAvailable));
+        if (shown == 0) {
+            System.out.println("No books available.\n");
         }
-        System.out.println();
     }
 
     private static void searchBookByTitle() {
@@ -212,7 +333,15 @@ public class InteractiveLibrary {
         }
         
         if (found.isEmpty()) {
-            System.out.println("✗ No books found with that title.\n");
+            System.out.println("✗ No books found with that title.");
+            List<Book> suggestions = library.fuzzyTitleSearch(searchTitle, MAX_SUGGESTIONS);
+            if (!suggestions.isEmpty()) {
+                System.out.println("ℹ Did you mean:");
+                for (Book book : suggestions) {
+                    System.out.println("  - " + book);
+                }
+            }
+            System.out.println();
         } else {
             System.out.println("\n✓ Found " + found.size() + " book(s):");
             for (Book book : found) {
@@ -222,6 +351,51 @@ public class InteractiveLibrary {
         }
     }
 
+    private static void queryBooks() {
+        scanner.nextLine(); // consume newline
+        System.out.println("\nFields: author: title: available: borrows(=,>,>=,<,<=) published(=,>,>=,<,<=)");
+        System.out.print("Enter query: ");
+        String text = scanner.nextLine();
+
+        BookQuery query;
+        try {
+            query = QueryLanguage.compile(text);
+        } catch (IllegalArgumentException e) {
+            System.out.println("✗ " + e.getMessage() + "\n");
+            return;
+        }
+
+        List<Book> found = library.query(query);
+        if (found.isEmpty()) {
+            System.out.println("✗ No books match " + query + ".\n");
+        } else {
+            System.out.println("\n✓ Found " + found.size() + " book(s) matching " + query + ":");
+            for (Book book : found) {
+                System.out.println("  - " + book);
+            }
+            printFacets(library.facets(query, EnumSet.allOf(BookFacet.class)));
+            System.out.println();
+        }
+    }
+
+    // Matches broken down by each facet, up to MAX_FACET_BUCKETS non-empty buckets each
+    private static void printFacets(FacetCounts facets) {
+        System.out.println("\nRefine by:");
+        for (BookFacet facet : facets.getFacets()) {
+            StringBuilder line = new StringBuilder("  " + facet.name().charAt(0) + facet.name().substring(1).toLowerCase() + ": ");
+            int shown = 0;
+            for (Map.Entry<String, Long> bucket : facets.get(facet).entrySet()) {
+                if (bucket.getValue() == 0) continue;
+                if (shown == MAX_FACET_BUCKETS) {
+                    line.append(", ...");
+                    break;
+                }
+                line.append(shown++ == 0 ? "" : ", ").append(bucket.getKey()).append(" (").append(bucket.getValue()).append(')');
+            }
+            System.out.println(line);
+        }
+    }
+
     private static void searchBookByISBN() {
         scanner.nextLine(); // consume newline
         System.out.print("\nEnter ISBN: ");
@@ -234,8 +408,13 @@ public class InteractiveLibrary {
         }
         
         Optional<Book> book = library.findByIsbn(isbn);
+        if (!book.isPresent() && catalog != null) {
+            book = catalog.findByIsbn(isbn);  // only the matching record is decoded
+        }
         if (book.isPresent()) {
-            System.out.println("\n✓ Book found: " + book.get() + "\n");
+            System.out.println("\n✓ Book found: " + book.get());
+            printAlsoBorrowed(book.get());
+            System.out.println();
         } else {
             System.out.println("✗ No book found with that ISBN.\n");
         }
@@ -296,6 +475,13 @@ public class InteractiveLibrary {
         int id = nextStudentId++;
         Student student = new Student(name, id, department);
         students.put(id, student);
+        if (patrons != null) {
+            try {
+                patrons.addStudent(student, nextStudentId);
+            } catch (IOException e) {
+                System.err.println("✗ Error saving student: " + e.getMessage());
+            }
+        }
         
         System.out.println("✓ Student registered successfully!");
         System.out.println("  Student ID: " + id);
@@ -335,8 +521,7 @@ public class InteractiveLibrary {
         
         viewAvailableBooks();
         scanner.nextLine(); // consume newline
-        System.out.print("Enter book title to borrow: ");
-        String title = scanner.nextLine();
+        String title = readTitle("Enter book title to borrow (end with ? for suggestions): ");
         
         List<Book> books = library.getAllBooks();
         Book foundBook = null;
@@ -348,10 +533,16 @@ public class InteractiveLibrary {
             }
         }
         
+        if (foundBook == null) {
+            foundBook = chooseSuggestion(title, Book::isAvailable);
+        }
+        
         if (foundBook != null) {
             student.borrowBook(foundBook);
+            journal(TransactionJournal.Type.BORROW, student.getId(), foundBook);
             FileManager.logTransaction("Student " + student.getName() + " borrowed: " + foundBook.getTitle());
             autoSaveLibrary();  // Auto-save after borrowing
+            printAlsoBorrowed(foundBook);
         } else {
             System.out.println("✗ Book not available or not found.\n");
         }
@@ -366,8 +557,7 @@ public class InteractiveLibrary {
         
         System.out.println("\n--- RETURN BOOK ---");
         scanner.nextLine(); // consume newline
-        System.out.print("Enter book title to return: ");
-        String title = scanner.nextLine();
+        String title = readTitle("Enter book title to return (end with ? for suggestions): ");
         
         List<Book> books = library.getAllBooks();
         Book foundBook = null;
@@ -379,9 +569,14 @@ public class InteractiveLibrary {
             }
         }
         
+        if (foundBook == null) {
+            foundBook = chooseSuggestion(title, book -> !book.isAvailable());
+        }
+        
         if (foundBook != null) {
             Staff staff = staffMembers.get(9999);
             staff.manageBook(foundBook, true);
+            journal(TransactionJournal.Type.RETURN, staff.getId(), foundBook);
             FileManager.logTransaction("Book returned: " + foundBook.getTitle());
             autoSaveLibrary();  // Auto-save after returning
         } else {
@@ -389,6 +584,18 @@ public class InteractiveLibrary {
         }
     }
 
+    // Books most often borrowed by the same patrons, from the co-borrow matrix
+    private static void printAlsoBorrowed(Book book) {
+        List<CoBorrowIndex.Recommendation> similar = recommendations.similar(book.getIsbn(), MAX_RECOMMENDATIONS);
+        if (similar.isEmpty()) return;
+        System.out.println("ℹ Borrowers of this book also borrowed:");
+        for (CoBorrowIndex.Recommendation r : similar) {
+            Optional<Book> other = library.findByIsbn(r.getIsbn());
+            String name = other.isPresent() ? other.get().getTitle() + " by " + other.get().getAuthor() : r.getIsbn();
+            System.out.println("  - " + name + " (" + r.getCoBorrows() + " patron(s))");
+        }
+    }
+
     // ========== STAFF OPERATIONS ==========
     private static void staffMenu() {
         System.out.println("\n--- STAFF OPERATIONS ---");
@@ -436,6 +643,13 @@ public class InteractiveLibrary {
         int id = nextStaffId++;
         Staff staff = new Staff(name, id);
         staffMembers.put(id, staff);
+        if (patrons != null) {
+            try {
+                patrons.addStaff(staff, nextStaffId);
+            } catch (IOException e) {
+                System.err.println("✗ Error saving staff: " + e.getMessage());
+            }
+        }
         
         System.out.println("✓ Staff registered successfully!");
         System.out.println("  Staff ID: " + id);
@@ -474,8 +688,7 @@ public class InteractiveLibrary {
         
         viewAllBooks();
         scanner.nextLine(); // consume newline
-        System.out.print("Enter book title to add back: ");
-        String title = scanner.nextLine();
+        String title = readTitle("Enter book title to add back (end with ? for suggestions): ");
         
         List<Book> books = library.getAllBooks();
         Book foundBook = null;
@@ -487,8 +700,13 @@ public class InteractiveLibrary {
             }
         }
         
+        if (foundBook == null) {
+            foundBook = chooseSuggestion(title, book -> true);
+        }
+        
         if (foundBook != null) {
             staff.manageBook(foundBook, true);
+            journal(TransactionJournal.Type.RESTORE, staff.getId(), foundBook);
             FileManager.logTransaction("Staff " + staff.getName() + " added book to library: " + foundBook.getTitle());
             autoSaveLibrary();  // Auto-save after staff adds book
         } else {
@@ -513,8 +731,7 @@ public class InteractiveLibrary {
         
         viewAllBooks();
         scanner.nextLine(); // consume newline
-        System.out.print("Enter book title to remove: ");
-        String title = scanner.nextLine();
+        String title = readTitle("Enter book title to remove (end with ? for suggestions): ");
         
         List<Book> books = library.getAllBooks();
         Book foundBook = null;
@@ -526,8 +743,13 @@ public class InteractiveLibrary {
             }
         }
         
+        if (foundBook == null) {
+            foundBook = chooseSuggestion(title, book -> true);
+        }
+        
         if (foundBook != null) {
             staff.manageBook(foundBook, false);
+            journal(TransactionJournal.Type.REMOVE, staff.getId(), foundBook);
             FileManager.logTransaction("Staff " + staff.getName() + " removed book from library: " + foundBook.getTitle());
             autoSaveLibrary();  // Auto-save after staff removes book
         } else {
@@ -540,9 +762,12 @@ public class InteractiveLibrary {
         System.out.println("\n--- REPORTS & STATISTICS ---");
         System.out.println("1. Sort Books by Title (Comparable)");
         System.out.println("2. Sort Books by Author (Comparator)");
-        System.out.println("3. Sort Books by Popularity (Comparator)");
-        System.out.println("4. Sort Books by Publish Date (Comparator)");
+        System.out.println("3. Sort Books by Popularity (index)");
+        System.out.println("4. Sort Books by Publish Date (index)");
         System.out.println("5. Library Statistics");
+        System.out.println("6. Books Published Between Dates (index)");
+        System.out.println("7. Borrowing Analytics (sketches)");
+        System.out.println("8. Borrow Activity by Hour and Day (time series)");
         System.out.println("0. Back to Main Menu");
 
         int choice = getIntInput("Enter your choice: ");
@@ -563,6 +788,15 @@ public class InteractiveLibrary {
             case 5:
                 showStatistics();
                 break;
+            case 6:
+                publishedBetween();
+                break;
+            case 7:
+                showBorrowingAnalytics();
+                break;
+            case 8:
+                showBorrowActivity();
+                break;
             case 0:
                 return;
             default:
@@ -577,8 +811,7 @@ public class InteractiveLibrary {
             System.out.println("No books in library.\n");
             return;
         }
-        library.printBooks(sorted);
-        System.out.println();
+        showPages(token -> BookPage.of(sorted, token, PAGE_SIZE));
     }
 
     private static void sortByAuthor() {
@@ -588,51 +821,155 @@ public class InteractiveLibrary {
             System.out.println("No books in library.\n");
             return;
         }
-        library.printBooks(sorted);
-        System.out.println();
+        showPages(token -> BookPage.of(sorted, token, PAGE_SIZE));
     }
 
+    // Served page by page from the borrow count index instead of sorting the catalog
     private static void sortByPopularity() {
-        System.out.println("\n--- BOOKS SORTED BY POPULARITY (Comparator) ---");
-        List<Book> sorted = library.getSortedBooks(new BookComparators.BorrowCountComparator());
-        if (sorted.isEmpty()) {
+        System.out.println("\n--- BOOKS SORTED BY POPULARITY (index) ---");
+        if (library.size() == 0) {
             System.out.println("No books in library.\n");
             return;
         }
-        library.printBooks(sorted);
-        System.out.println();
+        showPages(token -> library.page(BookOrder.POPULARITY, token, PAGE_SIZE));
     }
 
+    // Served page by page from the publish date index instead of sorting the catalog
     private static void sortByPublishDate() {
-        System.out.println("\n--- BOOKS SORTED BY PUBLISH DATE (Comparator) ---");
-        List<Book> sorted = library.getSortedBooks(new BookComparators.PublishDateComparator());
-        if (sorted.isEmpty()) {
+        System.out.println("\n--- BOOKS SORTED BY PUBLISH DATE (index) ---");
+        if (library.size() == 0) {
             System.out.println("No books in library.\n");
             return;
         }
-        library.printBooks(sorted);
-        System.out.println();
+        showPages(token -> library.page(BookOrder.PUBLISH_DATE, token, PAGE_SIZE));
+    }
+
+    // A binary search on the publish date index and the slice between the two dates
+    private static void publishedBetween() {
+        scanner.nextLine(); // consume newline
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = readOptionalDate("Enter start date (yyyy-MM-dd) or press Enter for no limit: ");
+            to = readOptionalDate("Enter end date (yyyy-MM-dd) or press Enter for no limit: ");
+        } catch (DateTimeParseException e) {
+            System.out.println("✗ Invalid date format.\n");
+            return;
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            System.out.println("✗ Start date is after end date.\n");
+            return;
+        }
+        System.out.println("\n--- BOOKS PUBLISHED" + (from != null ? " FROM " + from : "")
+                           + (to != null ? " TO " + to : "") + " ---");
+        List<Book> books = library.publishedBetween(from, to);
+        if (books.isEmpty()) {
+            System.out.println("No books published in that range.\n");
+            return;
+        }
+        System.out.println(books.size() + " book(s):");
+        showPages(token -> BookPage.of(books, token, PAGE_SIZE));
+    }
+
+    private static LocalDate readOptionalDate(String prompt) {
+        System.out.print(prompt);
+        String line = scanner.nextLine().trim();
+        return line.isEmpty() ? null : LocalDate.parse(line, DateTimeFormatter.ISO_LOCAL_DATE);
     }
 
+    // Read from the collection's running totals, no copy of the catalog
     private static void showStatistics() {
         System.out.println("\n--- LIBRARY STATISTICS ---");
-        List<Book> allBooks = library.getAllBooks();
-        List<Book> available = library.getAvailableBooks();
+        CatalogStatistics stats = library.getStatistics();
         
-        System.out.println("Total Books: " + allBooks.size());
-        System.out.println("Available Books: " + available.size());
-        System.out.println("Borrowed Books: " + (allBooks.size() - available.size()));
+        System.out.println("Total Books: " + stats.getTotalBooks());
+        System.out.println("Available Books: " + stats.getAvailableBooks());
+        System.out.println("Borrowed Books: " + stats.getBorrowedBooks());
+        System.out.println("Authors: " + stats.getAuthorCount());
         System.out.println("Total Students: " + students.size());
         System.out.println("Total Staff: " + staffMembers.size());
         
-        int totalBorrows = 0;
-        for (Book book : allBooks) {
-            totalBorrows += book.getBorrowCount();
+        System.out.println("Total Borrow Count: " + stats.getTotalBorrowCount());
+        if (stats.getTotalBooks() > 0) {
+            System.out.println("Borrows per Book: " + String.format("%.2f", stats.getAverageBorrowCount())
+                               + " (min " + stats.getMinBorrowCount() + ", max " + stats.getMaxBorrowCount() + ")");
         }
-        System.out.println("Total Borrow Count: " + totalBorrows);
         System.out.println();
     }
 
+    // Approximate answers from the day sketches, merged per window
+    private static void showBorrowingAnalytics() {
+        System.out.println("\n--- BORROWING ANALYTICS (approximate) ---");
+        TransactionAnalytics.Window month = analytics.lastDays(30);
+        printWindow("Today", analytics.lastDays(1));
+        printWindow("Last 7 days", analytics.lastDays(7));
+        printWindow("Last 30 days", month);
+        printWindow("All time", analytics.allTime());
+
+        Map<String, Long> top = month.topTitles(MAX_FACET_BUCKETS);
+        if (!top.isEmpty()) {
+            System.out.println("\nTop titles, last 30 days:");
+            int rank = 0;
+            for (Map.Entry<String, Long> entry : top.entrySet()) {
+                System.out.println("  " + (++rank) + ". " + entry.getKey() + " (~" + entry.getValue() + " borrows)");
+            }
+        }
+        System.out.println("ℹ Distinct borrowers within about 2.3%, borrow counts within 1%.\n");
+    }
+
+    // Read straight from the per-hour and per-day counters
+    private static void showBorrowActivity() {
+        System.out.println("\n--- BORROW ACTIVITY ---");
+        ActivitySeries activity = analytics.getActivity();
+        long now = System.currentTimeMillis();
+        System.out.println("Last 60 minutes: " + activity.totalBorrows(ActivitySeries.Resolution.MINUTE, 60, now)
+                           + " borrows, " + activity.totalReturns(ActivitySeries.Resolution.MINUTE, 60, now) + " returns");
+
+        System.out.println("\nLast 24 hours (borrows / returns):");
+        printSeries(activity, ActivitySeries.Resolution.HOUR, 24, now, DateTimeFormatter.ofPattern("MM-dd HH:00"));
+        System.out.println("\nLast 7 days (borrows / returns):");
+        printSeries(activity, ActivitySeries.Resolution.DAY, 7, now, DateTimeFormatter.ISO_LOCAL_DATE);
+
+        long[] byHour = activity.borrowsByHourOfDay(7, now);
+        long week = activity.totalBorrows(ActivitySeries.Resolution.HOUR, 7 * 24, now);
+        System.out.printf("%nBorrows per hour over the last 7 days: %.2f%n", week / (7.0 * 24));
+        if (week > 0) {
+            int busiest = 0;
+            for (int hour = 1; hour < 24; hour++) {
+                if (byHour[hour] > byHour[busiest]) busiest = hour;
+            }
+            System.out.printf("Busiest hour of the day: %02d:00-%02d:00 (%d borrows)%n", busiest, busiest + 1, byHour[busiest]);
+        }
+        System.out.println();
+    }
+
+    // Buckets with any activity, oldest first
+    private static void printSeries(ActivitySeries activity, ActivitySeries.Resolution resolution, int buckets,
+                                    long now, DateTimeFormatter format) {
+        long[] borrows = activity.borrows(resolution, buckets, now);
+        long[] returns = activity.returns(resolution, buckets, now);
+        LocalDateTime start = activity.bucketStart(resolution, buckets, now);
+        boolean any = false;
+        for (int i = 0; i < buckets; i++) {
+            if (borrows[i] == 0 && returns[i] == 0) continue;
+            LocalDateTime bucket = resolution == ActivitySeries.Resolution.HOUR ? start.plusHours(i) : start.plusDays(i);
+            System.out.printf("  %s  %4d / %-4d %s%n", format.format(bucket), borrows[i], returns[i],
+                              "#".repeat((int) Math.min(borrows[i], 40)));
+            any = true;
+        }
+        if (!any) System.out.println("  No borrows or returns.");
+    }
+
+    private static void printWindow(String label, TransactionAnalytics.Window window) {
+        if (window.getBorrows() == 0) {
+            System.out.printf("%-13s %d returns, no borrows%n", label + ":", window.getReturns());
+            return;
+        }
+        System.out.printf("%-13s %d borrows by ~%d patrons, %d returns; borrowed books' borrow count median %.0f, p90 %.0f%n",
+                          label + ":", window.getBorrows(), window.distinctBorrowers(), window.getReturns(),
+                          window.borrowCountQuantile(0.5), window.borrowCountQuantile(0.9));
+    }
+
     // ========== ADVANCED FEATURES DEMO ==========
     private static void demonstrateAdvancedFeatures() {
         System.out.println("\n--- ADVANCED FEATURES DEMONSTRATION ---");
@@ -731,6 +1068,7 @@ public class InteractiveLibrary {
         }
         
         System.out.println("\nFinal book status: " + popularBook);
+        checkpoint();  // the demo changed the catalog outside the journal
         System.out.println("✓ Thread synchronization prevents race conditions!\n");
     }
 
@@ -752,18 +1090,16 @@ public class InteractiveLibrary {
         System.out.println("5. Group books by author");
         System.out.println("6. Show borrow statistics");
         System.out.println("7. Search books by title keyword");
+        System.out.println("8. Combined filter with query plan");
         System.out.println("0. Back");
         
         int choice = getIntInput("\nEnter your choice: ");
-        List<Book> allBooks = library.getAllBooks();
         
         switch (choice) {
             case 1:
                 System.out.println("\n--- Filter Available Books ---");
-                List<Book> available = allBooks.stream()
-                    .filter(Book::isAvailable)
-                    .collect(java.util.stream.Collectors.toList());
-                System.out.println("Available: " + available.size() + " out of " + allBooks.size() + " books");
+                List<Book> available = BookFilters.getAvailableBooks(library);
+                System.out.println("Available: " + available.size() + " out of " + library.size() + " books");
                 available.forEach(book -> System.out.println("  - " + book.getTitle()));
                 break;
                 
@@ -772,37 +1108,29 @@ public class InteractiveLibrary {
                 System.out.print("\nEnter author name to search: ");
                 String author = scanner.nextLine();
                 System.out.println("\n--- Books by " + author + " ---");
-                allBooks.stream()
-                    .filter(book -> book.getAuthor().toLowerCase().contains(author.toLowerCase()))
-                    .forEach(book -> System.out.println("  - " + book.getTitle() + " by " + book.getAuthor()));
+                printFirstMatches(book -> book.getAuthor().toLowerCase().contains(author.toLowerCase()),
+                                  book -> book.getTitle() + " by " + book.getAuthor());
                 break;
                 
             case 3:
                 int minBorrows = getIntInput("\nEnter minimum borrow count: ");
                 System.out.println("\n--- Books borrowed at least " + minBorrows + " times ---");
-                List<Book> filtered = allBooks.stream()
-                    .filter(book -> book.getBorrowCount() >= minBorrows)
-                    .collect(java.util.stream.Collectors.toList());
-                if (filtered.isEmpty()) {
+                if (printFirstMatches(book -> book.getBorrowCount() >= minBorrows,
+                                      book -> book.getTitle() + " (" + book.getBorrowCount() + " borrows)") == 0) {
                     System.out.println("  No books found with that criteria.");
-                } else {
-                    filtered.forEach(book -> System.out.println("  - " + book.getTitle() + " (" + book.getBorrowCount() + " borrows)"));
                 }
                 break;
                 
             case 4:
                 int topN = getIntInput("\nEnter number of top books to show: ");
                 System.out.println("\n--- Top " + topN + " Most Borrowed Books ---");
-                allBooks.stream()
-                    .sorted((b1, b2) -> Integer.compare(b2.getBorrowCount(), b1.getBorrowCount()))
-                    .limit(topN)
+                BookFilters.getTopBorrowed(library, topN)
                     .forEach(book -> System.out.println("  - " + book.getTitle() + " (" + book.getBorrowCount() + " borrows)"));
                 break;
                 
             case 5:
                 System.out.println("\n--- Books Grouped by Author ---");
-                allBooks.stream()
-                    .collect(java.util.stream.Collectors.groupingBy(Book::getAuthor))
+                BookFilters.groupByAuthor(library)
                     .forEach((auth, books) -> {
                         System.out.println("  " + auth + " (" + books.size() + " book(s)):");
                         books.forEach(book -> System.out.println("    - " + book.getTitle()));
@@ -811,9 +1139,7 @@ public class InteractiveLibrary {
                 
             case 6:
                 System.out.println("\n--- Borrow Statistics ---");
-                java.util.IntSummaryStatistics stats = allBooks.stream()
-                    .mapToInt(Book::getBorrowCount)
-                    .summaryStatistics();
+                java.util.IntSummaryStatistics stats = BookFilters.getBorrowStatistics(library);
                 System.out.println("  Total books: " + stats.getCount());
                 System.out.println("  Total borrows: " + stats.getSum());
                 System.out.println("  Average borrows: " + String.format("%.2f", stats.getAverage()));
@@ -826,16 +1152,37 @@ public class InteractiveLibrary {
                 System.out.print("\nEnter keyword to search in titles: ");
                 String keyword = scanner.nextLine();
                 System.out.println("\n--- Books containing '" + keyword + "' ---");
-                List<Book> matches = allBooks.stream()
-                    .filter(book -> book.getTitle().toLowerCase().contains(keyword.toLowerCase()))
-                    .collect(java.util.stream.Collectors.toList());
-                if (matches.isEmpty()) {
+                if (printFirstMatches(book -> book.getTitle().toLowerCase().contains(keyword.toLowerCase()),
+                                      Book::getTitle) == 0) {
                     System.out.println("  No books found.");
-                } else {
-                    matches.forEach(book -> System.out.println("  - " + book.getTitle()));
                 }
                 break;
                 
+            case 8:
+                scanner.nextLine();
+                System.out.print("\nAvailable books only? (y/n): ");
+                boolean availableOnly = scanner.nextLine().trim().equalsIgnoreCase("y");
+                System.out.print("Minimum borrow count (blank for any): ");
+                String minInput = scanner.nextLine().trim();
+                System.out.print("Author contains (blank for any): ");
+                String authorInput = scanner.nextLine().trim();
+                Integer minBorrowCount = null;
+                if (!minInput.isEmpty()) {
+                    try {
+                        minBorrowCount = Integer.parseInt(minInput);
+                    } catch (NumberFormatException e) {
+                        System.out.println("✗ Invalid number, ignoring minimum borrow count.");
+                    }
+                }
+                BookQuery query = BookFilters.buildQuery(availableOnly, minBorrowCount, authorInput);
+                System.out.println("\n--- Query Plan ---");
+                System.out.print(library.explain(query));
+                List<Book> results = library.query(query);
+                System.out.println("\n--- " + results.size() + " matching book(s) ---");
+                results.forEach(book -> System.out.println("  - " + book.getTitle() + " by " + book.getAuthor()
+                                                           + " (" + book.getBorrowCount() + " borrows)"));
+                break;
+                
             case 0:
                 return;
                 
@@ -845,6 +1192,20 @@ public class InteractiveLibrary {
         System.out.println();
     }
 
+    // Print the first FIRST_MATCHES matching books from a lazy stream over the catalog,
+    // so the scan stops as soon as they are found; returns the number printed
+    private static int printFirstMatches(Predicate<Book> condition, Function<Book, String> format) {
+        List<Book> matches = BookFilters.firstMatches(library, condition, FIRST_MATCHES + 1);
+        int shown = Math.min(matches.size(), FIRST_MATCHES);
+        for (Book book : matches.subList(0, shown)) {
+            System.out.println("  - " + format.apply(book));
+        }
+        if (matches.size() > FIRST_MATCHES) {
+            System.out.println("ℹ Showing the first " + FIRST_MATCHES + " matches; refine the search to narrow them down.");
+        }
+        return shown;
+    }
+
     private static void demonstrateRegex() {
         System.out.println("\n=== REGULAR EXPRESSIONS DEMONSTRATION ===");
         System.out.println("1. Validate ISBN");
@@ -939,6 +1300,11 @@ public class InteractiveLibrary {
         System.out.println("4. View transaction log");
         System.out.println("5. Export books to CSV");
         System.out.println("6. Clear transaction log");
+        System.out.println("7. Save memory-mapped catalog");
+        System.out.println("8. Open memory-mapped catalog");
+        System.out.println("9. Import books from CSV");
+        System.out.println("10. Export books to JSON Lines");
+        System.out.println("11. Import books from JSON Lines");
         System.out.println("0. Back");
         
         int choice = getIntInput("\nEnter your choice: ");
@@ -1012,6 +1378,53 @@ public class InteractiveLibrary {
                 }
                 break;
                 
+            case 7:
+                if (FileManager.saveCatalog(books, FileManager.getCatalogFile())) {
+                    System.out.println("✓ " + books.size() + " books written in mapped catalog layout");
+                }
+                break;
+                
+            case 8:
+                MappedCatalog opened = FileManager.openCatalog(FileManager.getCatalogFile());
+                if (opened != null) {
+                    closeCatalog();
+                    catalog = opened;
+                    System.out.println("\nFirst 3 titles (read without materializing books):");
+                    for (int i = 0; i < Math.min(3, catalog.size()); i++) {
+                        System.out.println("  " + (i+1) + ". " + catalog.titleAt(i) + " by " + catalog.authorAt(i));
+                    }
+                }
+                break;
+                
+            case 9:
+                scanner.nextLine();
+                System.out.print("\nEnter CSV filename to import (e.g., books.csv): ");
+                String importFile = scanner.nextLine();
+                if (importFile.trim().isEmpty()) importFile = "library_export.csv";
+                FileManager.importFromCSV(importFile, library);
+                checkpoint();  // bulk loads go straight to a snapshot instead of the journal
+                System.out.println("✓ Library now holds " + library.size() + " books");
+                break;
+                
+            case 10:
+                scanner.nextLine();
+                System.out.print("\nEnter JSON Lines filename (e.g., books.jsonl or books.jsonl.gz): ");
+                String jsonFile = scanner.nextLine();
+                if (jsonFile.trim().isEmpty()) jsonFile = "library_export.jsonl";
+                FileManager.exportToJsonLines(books, jsonFile);
+                System.out.println("✓ " + books.size() + " books exported to " + jsonFile);
+                break;
+                
+            case 11:
+                scanner.nextLine();
+                System.out.print("\nEnter JSON Lines filename to import (e.g., books.jsonl or books.jsonl.gz): ");
+                String jsonImportFile = scanner.nextLine();
+                if (jsonImportFile.trim().isEmpty()) jsonImportFile = "library_export.jsonl";
+                FileManager.importFromJsonLines(jsonImportFile, library);
+                checkpoint();  // bulk loads go straight to a snapshot instead of the journal
+                System.out.println("✓ Library now holds " + library.size() + " books");
+                break;
+                
             case 0:
                 return;
                 
@@ -1022,6 +1435,34 @@ public class InteractiveLibrary {
     }
 
     // ========== UTILITY METHODS ==========
+    // Rebuild the catalog from the last snapshot plus journal; seed it on first run
+    private static void recoverLibrary() {
+        try {
+            // Loans journaled after the saved co-borrow index; it skips the ones it has
+            RecoveryManager.RecoveryReport report = RecoveryManager.recover(
+                library, FileManager.getSnapshotFile(), FileManager.getJournalFile(), record -> {
+                    if (record.getType() == TransactionJournal.Type.BORROW) {
+                        recommendations.recordBorrow(record.getPatronId(), record.getIsbn(), record.getLsn());
+                    }
+                });
+            journal = TransactionJournal.open(FileManager.getJournalFile(), report.getLastLsn());
+            snapshotter = new BackgroundSnapshotter(library, journal, FileManager.getSnapshotFile());
+            snapshotter.addCompanion(() -> {
+                CoBorrowIndex.Image image = recommendations.image();  // array copies, not the rows
+                return () -> image.save(FileManager.getCoBorrowFile());
+            });
+            if (report.isEmpty()) {
+                initializeLibrary();
+                checkpoint();
+            } else {
+                System.out.println("✓ Recovered " + report + "\n");
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Recovery failed, journaling disabled: " + e.getMessage());
+            initializeLibrary();
+        }
+    }
+
     private static void initializeLibrary() {
         // Add some initial books
         library.addBook(new Book("Harry Potter", "J.K. Rowling", "978-0439708180", LocalDate.of(1998, 9, 1)));
@@ -1035,6 +1476,96 @@ public class InteractiveLibrary {
         System.out.println("✓ Library initialized and saved to " + AUTO_SAVE_FILE + "\n");
     }
 
+    // Restore registered students, staff and the ID counters
+    private static void loadPatrons() {
+        try {
+            patrons = PatronRegistry.open(FileManager.getStudentsFile(), nextStudentId, nextStaffId);
+            students.putAll(patrons.getStudents());
+            staffMembers.putAll(patrons.getStaff());
+            nextStudentId = patrons.getNextStudentId();
+            nextStaffId = patrons.getNextStaffId();
+            if (!students.isEmpty() || !staffMembers.isEmpty()) {
+                System.out.println("✓ Loaded " + students.size() + " students and " + staffMembers.size()
+                    + " staff in " + patrons.getLoadMillis() + " ms\n");
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Error loading patron registry: " + e.getMessage());
+        }
+    }
+
+    // Print numbered pages until the last one or until the user stops; returns the
+    // number of books shown
+    private static int showPages(Function<String, BookPage<Book>> pages) {
+        String token = null;
+        int shown = 0;
+        while (true) {
+            BookPage<Book> page = pages.apply(token);
+            for (Book book : page.getBooks()) {
+                System.out.println((++shown) + ". " + book);
+            }
+            if (!page.hasNext()) break;
+            System.out.print("Enter n for next page, q to stop: ");
+            if (!scanner.next().equalsIgnoreCase("n")) break;
+            token = page.getNextToken();
+        }
+        if (shown > 0) System.out.println();
+        return shown;
+    }
+
+    private static String readTitle(String prompt) {
+        return readWithCompletion(prompt, library::completeTitle);
+    }
+
+    // Read a line, offering completions: a line ending in '?' lists the most borrowed
+    // entries starting with the text before it, and a number then picks one of them
+    private static String readWithCompletion(String prompt,
+                                             BiFunction<String, Integer, List<CompletionIndex.Completion>> complete) {
+        List<CompletionIndex.Completion> shown = Collections.emptyList();
+        while (true) {
+            System.out.print(prompt);
+            String line = scanner.nextLine();
+            String trimmed = line.trim();
+            if (trimmed.endsWith("?")) {
+                shown = complete.apply(trimmed.substring(0, trimmed.length() - 1), MAX_SUGGESTIONS);
+                if (shown.isEmpty()) {
+                    System.out.println("ℹ No matches.");
+                }
+                for (int i = 0; i < shown.size(); i++) {
+                    System.out.println("  " + (i + 1) + ". " + shown.get(i).getText()
+                                       + " (" + shown.get(i).getScore() + " borrows)");
+                }
+                continue;
+            }
+            if (trimmed.matches("\\d{1,2}")) {
+                int choice = Integer.parseInt(trimmed);
+                if (choice >= 1 && choice <= shown.size()) {
+                    return shown.get(choice - 1).getText();
+                }
+            }
+            return line;
+        }
+    }
+
+    // Offer close title matches when a typed title has no exact match; returns the
+    // book the user picks, or null
+    private static Book chooseSuggestion(String title, Predicate<Book> eligible) {
+        List<Book> suggestions = new ArrayList<>();
+        for (Book book : library.fuzzyTitleSearch(title, MAX_SUGGESTIONS * 4)) {
+            if (eligible.test(book) && suggestions.size() < MAX_SUGGESTIONS) {
+                suggestions.add(book);
+            }
+        }
+        if (suggestions.isEmpty()) {
+            return null;
+        }
+        System.out.println("ℹ No exact match for \"" + title + "\". Did you mean:");
+        for (int i = 0; i < suggestions.size(); i++) {
+            System.out.println("  " + (i + 1) + ". " + suggestions.get(i));
+        }
+        int choice = getIntInput("Enter number (0 to cancel): ");
+        return choice >= 1 && choice <= suggestions.size() ? suggestions.get(choice - 1) : null;
+    }
+
     private static int getIntInput(String prompt) {
         System.out.print(prompt);
         while (!scanner.hasNextInt()) {
@@ -0,0 +1,407 @@
+package library;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+// Streaming reader for the JSON Lines catalog format written by CatalogExporter:
+// one {"title":...,"author":...,"isbn":...,"publishDate":...,"available":...,"borrowCount":...}
+// object per line. Works from any InputStream, so a pipe is read as it arrives.
+//
+// The tokenizer runs directly on a reused byte buffer: keys are matched as bytes,
+// numbers, booleans and dates are parsed in place, and strings without escapes are
+// decoded straight from the buffer. Unknown keys are skipped; a malformed line is
+// counted as rejected and reading resumes at the next line.
+public class JsonLinesReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_BATCH_SIZE = 50_000;
+    private static final byte[] TITLE = ascii("title");
+    private static final byte[] AUTHOR = ascii("author");
+    private static final byte[] ISBN = ascii("isbn");
+    private static final byte[] PUBLISH_DATE = ascii("publishDate");
+    private static final byte[] AVAILABLE = ascii("available");
+    private static final byte[] BORROW_COUNT = ascii("borrowCount");
+
+    // Thrown for a malformed record; carries no stack trace since it is part of normal control flow
+    private static final class MalformedRecord extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedRecord() {
+            super("malformed JSON record", null, false, false);
+        }
+    }
+
+    private static final MalformedRecord MALFORMED = new MalformedRecord();
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+    private int lastRead = -1;
+    private long records;
+    private long rejected;
+
+    public JsonLinesReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Open a file; names ending in .gz are decompressed on the fly
+    public static JsonLinesReader open(String filename) throws IOException {
+        InputStream file = new FileInputStream(filename);
+        return new JsonLinesReader(filename.endsWith(".gz") ? new GZIPInputStream(file, BUFFER_SIZE) : file);
+    }
+
+    // Stream a file into the collection in batches
+    public static CsvImporter.ImportResult importFile(String filename, LibraryCollection<Book> library)
+            throws IOException {
+        try (JsonLinesReader reader = open(filename)) {
+            return reader.importInto(library, DEFAULT_BATCH_SIZE);
+        }
+    }
+
+    // Read everything that is left, adding batchSize books at a time
+    public CsvImporter.ImportResult importInto(LibraryCollection<Book> library, int batchSize) throws IOException {
+        long start = System.nanoTime();
+        long before = records;
+        List<Book> batch = new ArrayList<>(Math.min(batchSize, 4096));
+        Book book;
+        while ((book = next()) != null) {
+            batch.add(book);
+            if (batch.size() == batchSize) {
+                library.addAll(batch);
+                batch.clear();
+            }
+        }
+        library.addAll(batch);
+        return new CsvImporter.ImportResult(records - before, rejected, System.nanoTime() - start);
+    }
+
+    // Next book, or null at end of input
+    public Book next() throws IOException {
+        while (true) {
+            int b = skipWhitespace();
+            if (b < 0) return null;
+            lastRead = -1;
+            try {
+                Book book = parseObject();
+                records++;
+                return book;
+            } catch (MalformedRecord e) {
+                rejected++;
+                if (lastRead != '\n') skipLine();
+            }
+        }
+    }
+
+    public long getRecords() { return records; }
+    public long getRejected() { return rejected; }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // ---------- tokenizer ----------
+
+    private Book parseObject() throws IOException, MalformedRecord {
+        expect('{');
+        String title = null;
+        String author = null;
+        String isbn = null;
+        LocalDate publishDate = null;
+        boolean available = true;
+        int borrowCount = 0;
+
+        int b = skipSpaces();
+        if (b == '}') {
+            position++;
+            throw MALFORMED;  // a book needs at least a title
+        }
+        while (true) {
+            expect('"');
+            readStringBytes();
+            expect(':');
+            skipSpaces();
+            if (keyIs(TITLE)) {
+                title = readStringOrNull();
+            } else if (keyIs(AUTHOR)) {
+                author = readStringOrNull();
+            } else if (keyIs(ISBN)) {
+                isbn = readStringOrNull();
+            } else if (keyIs(PUBLISH_DATE)) {
+                publishDate = readDateOrNull();
+            } else if (keyIs(AVAILABLE)) {
+                available = readBoolean();
+            } else if (keyIs(BORROW_COUNT)) {
+                borrowCount = readInt();
+            } else {
+                skipValue(0);
+            }
+            b = skipSpaces();
+            position++;
+            if (b == '}') break;
+            if (b != ',') throw MALFORMED;
+            skipSpaces();
+        }
+        if (title == null || title.isEmpty()) throw MALFORMED;
+
+        Book book = new Book(title, author, isbn, publishDate);
+        book.setAvailable(available);
+        book.setBorrowCount(borrowCount);
+        return book;
+    }
+
+    private boolean keyIs(byte[] key) {
+        return scratchLength == key.length && Arrays.equals(scratch, 0, scratchLength, key, 0, key.length);
+    }
+
+    private String readStringOrNull() throws IOException, MalformedRecord {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        // Fast path: no escapes and the whole string is already buffered
+        for (int i = position; i < limit; i++) {
+            byte c = buffer[i];
+            if (c == '"') {
+                String value = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+                position = i + 1;
+                return value;
+            }
+            if (c == '\\' || c == '\n') break;
+        }
+        readStringBytes();
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    // Read the rest of a string (opening quote consumed) as UTF-8 bytes into scratch
+    private void readStringBytes() throws IOException, MalformedRecord {
+        scratchLength = 0;
+        while (true) {
+            int b = read();
+            if (b < 0 || b == '\n') throw MALFORMED;
+            if (b == '"') return;
+            if (b != '\\') {
+                append(b);
+                continue;
+            }
+            int e = read();
+            switch (e) {
+                case '"':  append('"'); break;
+                case '\\': append('\\'); break;
+                case '/':  append('/'); break;
+                case 'b':  append('\b'); break;
+                case 'f':  append('\f'); break;
+                case 'n':  append('\n'); break;
+                case 'r':  append('\r'); break;
+                case 't':  append('\t'); break;
+                case 'u':  appendCodePoint(readUnicodeEscape()); break;
+                default:   throw MALFORMED;
+            }
+        }
+    }
+
+    // Four hex digits after \\u, combining a surrogate pair into one code point
+    private int readUnicodeEscape() throws IOException, MalformedRecord {
+        int c = readHex4();
+        if (Character.isHighSurrogate((char) c) && peek() == '\\') {
+            position++;
+            if (read() != 'u') throw MALFORMED;
+            int low = readHex4();
+            if (!Character.isLowSurrogate((char) low)) throw MALFORMED;
+            return Character.toCodePoint((char) c, (char) low);
+        }
+        return Character.isSurrogate((char) c) ? '\uFFFD' : c;
+    }
+
+    private int readHex4() throws IOException, MalformedRecord {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) throw MALFORMED;
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int cp) {
+        if (cp < 0x80) {
+            append(cp);
+        } else if (cp < 0x800) {
+            append(0xC0 | (cp >> 6));
+            append(0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            append(0xE0 | (cp >> 12));
+            append(0x80 | ((cp >> 6) & 0x3F));
+            append(0x80 | (cp & 0x3F));
+        } else {
+            append(0xF0 | (cp >> 18));
+            append(0x80 | ((cp >> 12) & 0x3F));
+            append(0x80 | ((cp >> 6) & 0x3F));
+            append(0x80 | (cp & 0x3F));
+        }
+    }
+
+    // "yyyy-MM-dd" parsed from the string bytes, or null
+    private LocalDate readDateOrNull() throws IOException, MalformedRecord {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        readStringBytes();
+        if (scratchLength != 10 || scratch[4] != '-' || scratch[7] != '-') throw MALFORMED;
+        try {
+            return LocalDate.of(digits(0, 4), digits(5, 2), digits(8, 2));
+        } catch (DateTimeException e) {
+            throw MALFORMED;
+        }
+    }
+
+    private int digits(int from, int count) throws MalformedRecord {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = scratch[i] - '0';
+            if (d < 0 || d > 9) throw MALFORMED;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private boolean readBoolean() throws IOException, MalformedRecord {
+        if (peek() == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    private int readInt() throws IOException, MalformedRecord {
+        boolean negative = peek() == '-';
+        if (negative) position++;
+        long value = 0;
+        int count = 0;
+        int b;
+        while ((b = peek()) >= '0' && b <= '9') {
+            position++;
+            value = value * 10 + (b - '0');
+            if (++count > 10) throw MALFORMED;
+        }
+        if (count == 0 || b == '.' || b == 'e' || b == 'E') throw MALFORMED;
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw MALFORMED;
+        return (int) value;
+    }
+
+    // Skip any JSON value belonging to a key we do not know
+    private void skipValue(int depth) throws IOException, MalformedRecord {
+        if (depth > 64) throw MALFORMED;
+        int b = skipSpaces();
+        if (b == '"') {
+            position++;
+            readStringBytes();
+        } else if (b == '{' || b == '[') {
+            position++;
+            int close = b == '{' ? '}' : ']';
+            if (skipSpaces() == close) {
+                position++;
+                return;
+            }
+            while (true) {
+                if (close == '}') {
+                    expect('"');
+                    readStringBytes();
+                    expect(':');
+                }
+                skipValue(depth + 1);
+                int next = skipSpaces();
+                position++;
+                if (next == close) return;
+                if (next != ',') throw MALFORMED;
+            }
+        } else {
+            // number, true, false or null
+            int count = 0;
+            while ((b = peek()) >= 0 && b != ',' && b != '}' && b != ']' && b != '\n' && b > ' ') {
+                position++;
+                count++;
+            }
+            if (count == 0) throw MALFORMED;
+        }
+    }
+
+    // ---------- byte level ----------
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return lastRead = buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    // Whitespace including newlines, between records
+    private int skipWhitespace() throws IOException {
+        int b;
+        while ((b = peek()) == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            position++;
+        }
+        return b;
+    }
+
+    // Whitespace inside a record; a newline there means the record is cut short
+    private int skipSpaces() throws IOException, MalformedRecord {
+        int b;
+        while ((b = peek()) == ' ' || b == '\t' || b == '\r') {
+            position++;
+        }
+        if (b < 0 || b == '\n') throw MALFORMED;
+        return b;
+    }
+
+    private void expect(char c) throws IOException, MalformedRecord {
+        if (skipSpaces() != c) throw MALFORMED;
+        position++;
+    }
+
+    private void expectLiteral(String literal) throws IOException, MalformedRecord {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) throw MALFORMED;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int b;
+        while ((b = read()) >= 0 && b != '\n') {
+            // discard the rest of a malformed record
+        }
+    }
+
+    private void append(int b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = (byte) b;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
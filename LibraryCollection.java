@@ -1,30 +1,52 @@
 package library;
 
+import java.io.IOException;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Generic collection class with thread-safe operations
 public class LibraryCollection<T extends Book> {
-    private final List<T> books;
-    private final Map<String, T> booksByIsbn;
+    private static final int SCAN_BATCH = 1024;
+    private static final int ADDED = BookField.values().length;
+
+    private final BookStore<T> store;
     private final ReadWriteLock lock;
+    private final BookListener changeListener = new ChangeListener();
+    private final List<View> openViews = new CopyOnWriteArrayList<>();
+    private final CatalogAggregates aggregates = new CatalogAggregates();
+    // Mutation counters per BookField, then one for adds; only ever incremented
+    private final long[] generations = new long[BookField.values().length + 1];
+    private final QueryCache cache = new QueryCache(64, 1 << 20);
 
     public LibraryCollection() {
-        this.books = new ArrayList<>();
-        this.booksByIsbn = new ConcurrentHashMap<>();
+        this(new HeapBookStore<>());
+    }
+
+    // Back the collection with a specific storage engine, e.g. LsmBookStore
+    public LibraryCollection(BookStore<T> store) {
+        this.store = store;
         this.lock = new ReentrantReadWriteLock();
+        store.forEach(aggregates::add);  // a disk-backed store may already hold books
     }
 
     // Add a book (thread-safe)
     public void addBook(T book) {
         lock.writeLock().lock();
         try {
-            books.add(book);
-            if (book.getIsbn() != null) {
-                booksByIsbn.put(book.getIsbn(), book);
-            }
+            store.add(book);
+            aggregates.add(book);
+            generations[ADDED]++;
+            book.setListener(changeListener);
         } finally {
             lock.writeLock().unlock();
         }
@@ -34,11 +56,11 @@ public class LibraryCollection<T extends Book> {
     public void addAll(Collection<? extends T> newBooks) {
         lock.writeLock().lock();
         try {
+            store.addAll(newBooks);
+            generations[ADDED]++;
             for (T book : newBooks) {
-                books.add(book);
-                if (book.getIsbn() != null) {
-                    booksByIsbn.put(book.getIsbn(), book);
-                }
+                aggregates.add(book);
+                book.setListener(changeListener);
             }
         } finally {
             lock.writeLock().unlock();
@@ -49,7 +71,9 @@ public class LibraryCollection<T extends Book> {
     public List<T> getAllBooks() {
         lock.readLock().lock();
         try {
-            return new ArrayList<>(books);
+            List<T> all = new ArrayList<>(store.size());
+            store.forEach(book -> all.add(attach(book)));
+            return all;
         } finally {
             lock.readLock().unlock();
         }
@@ -57,7 +81,158 @@ public class LibraryCollection<T extends Book> {
 
     // Find book by ISBN
     public Optional<T> findByIsbn(String isbn) {
-        return Optional.ofNullable(booksByIsbn.get(isbn));
+        lock.readLock().lock();
+        try {
+            return store.findByIsbn(isbn).map(this::attach);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Iterate books in ISBN order starting after fromIsbn (null = from the start).
+    // Books are fetched from the store in batches, so only one batch is held at a time.
+    public Iterator<T> scanByIsbn(String fromIsbn) {
+        return new Iterator<T>() {
+            private List<T> batch = Collections.emptyList();
+            private int next;
+            private String after = fromIsbn;
+            private boolean exhausted;
+            private boolean started;
+
+            @Override
+            public boolean hasNext() {
+                if (next < batch.size()) return true;
+                if (exhausted) return false;
+                lock.readLock().lock();
+                try {
+                    // Later batches resume from a store cursor, which keeps copies sharing an ISBN
+                    batch = started ? store.scan(BookOrder.ISBN, after, SCAN_BATCH) : store.scanByIsbn(after, SCAN_BATCH);
+                    if (!batch.isEmpty()) after = store.cursorOf(BookOrder.ISBN, batch.get(batch.size() - 1));
+                } finally {
+                    lock.readLock().unlock();
+                }
+                started = true;
+                next = 0;
+                exhausted = batch.size() < SCAN_BATCH;
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return attach(batch.get(next++));
+            }
+        };
+    }
+
+    // Lazy stream over the catalog in storage order, without copying it. Books are
+    // fetched in growing batches, each under the read lock, so a short-circuiting
+    // operation (findFirst, limit, anyMatch) stops after the first batch or two.
+    // Weakly consistent: never fails on concurrent changes, and reflects some of
+    // them. A book is seen at most once; books added meanwhile may or may not be.
+    public Stream<T> stream() {
+        return stream(BookOrder.STORAGE);
+    }
+
+    // Same, in another order supported by the store. A book whose sort key changes
+    // during the stream may be seen twice or not at all, as with page().
+    public Stream<T> stream(BookOrder order) {
+        return StreamSupport.stream(new BatchSpliterator(order), false);
+    }
+
+    private class BatchSpliterator extends Spliterators.AbstractSpliterator<T> {
+        private static final int FIRST_BATCH = 64;
+
+        private final BookOrder order;
+        private List<T> batch = Collections.emptyList();
+        private int next;
+        private int batchSize = FIRST_BATCH;
+        private String cursor;
+        private boolean exhausted;
+
+        BatchSpliterator(BookOrder order) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.order = order;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (next == batch.size()) {
+                if (exhausted) return false;
+                lock.readLock().lock();
+                try {
+                    batch = store.scan(order, cursor, batchSize);
+                    if (!batch.isEmpty()) cursor = store.cursorOf(order, batch.get(batch.size() - 1));
+                } finally {
+                    lock.readLock().unlock();
+                }
+                next = 0;
+                exhausted = batch.size() < batchSize;
+                batchSize = Math.min(SCAN_BATCH, batchSize * 2);
+                if (batch.isEmpty()) return false;
+            }
+            action.accept(attach(batch.get(next++)));
+            return true;
+        }
+    }
+
+    // One page of books in the given order, starting after the book the token was
+    // issued for (null = first page). Tokens survive changes to the collection: a
+    // book that moves behind the cursor is skipped, one that moves ahead of it is
+    // listed again. Only pageSize books are held per call.
+    public BookPage<T> page(BookOrder order, String token, int pageSize) {
+        return page(order, token, pageSize, null);
+    }
+
+    // Same, keeping only books that match the filter; scans further until the page is full
+    public BookPage<T> page(BookOrder order, String token, int pageSize, Predicate<? super T> filter) {
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size must be positive");
+        String cursor = decodeToken(order, token);
+        List<T> books = new ArrayList<>(Math.min(pageSize, SCAN_BATCH));
+        lock.readLock().lock();
+        try {
+            while (books.size() < pageSize) {
+                int want = filter == null ? pageSize - books.size() : Math.max(pageSize - books.size(), SCAN_BATCH);
+                List<T> batch = store.scan(order, cursor, want);
+                for (T book : batch) {
+                    cursor = store.cursorOf(order, book);
+                    if (filter == null || filter.test(book)) {
+                        books.add(attach(book));
+                        if (books.size() == pageSize) break;
+                    }
+                }
+                if (batch.size() < want) {
+                    if (books.size() < pageSize) cursor = null;  // store exhausted
+                    break;
+                }
+            }
+            // A full page may still be the last one
+            if (cursor != null && store.scan(order, cursor, 1).isEmpty()) cursor = null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new BookPage<>(books, cursor == null ? null : encodeToken(order, cursor));
+    }
+
+    // Tokens are the order plus the store cursor, Base64 so they are opaque and URL-safe
+    private static String encodeToken(BookOrder order, String cursor) {
+        return Base64.getUrlEncoder().withoutPadding()
+                     .encodeToString((order.name() + ":" + cursor).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(BookOrder order, String token) {
+        if (token == null) return null;
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        String prefix = order.name() + ":";
+        if (!decoded.startsWith(prefix)) {
+            throw new IllegalArgumentException("Page token was not issued for " + order + " order");
+        }
+        return decoded.substring(prefix.length());
     }
 
     // Get available books
@@ -65,41 +240,216 @@ public class LibraryCollection<T extends Book> {
         lock.readLock().lock();
         try {
             List<T> available = new ArrayList<>();
-            for (T book : books) {
+            store.forEach(book -> {
                 if (book.isAvailable()) {
-                    available.add(book);
+                    available.add(attach(book));
                 }
-            }
+            });
             return available;
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    // Sort books using Comparable (natural ordering)
-    public List<T> getSortedBooks() {
+    // Books matching a query, found through the cheapest index (see QueryPlanner).
+    // Results come in index order, not insertion order.
+    public List<T> query(BookQuery query) {
         lock.readLock().lock();
         try {
-            List<T> sorted = new ArrayList<>(books);
-            Collections.sort(sorted);
-            return sorted;
+            List<T> result = new ArrayList<>();
+            plan(query).execute(store, book -> result.add(attach(book)));
+            return result;
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    // Sort books using Comparator
-    public List<T> getSortedBooks(Comparator<? super T> comparator) {
+    // The plan query() would use, with the costed alternatives
+    public String explain(BookQuery query) {
+        lock.readLock().lock();
+        try {
+            return plan(query).explain();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private QueryPlanner.QueryPlan<T> plan(BookQuery query) {
+        return QueryPlanner.plan(query, store.indexes(), store.size());
+    }
+
+    // Books published in [from, to], oldest first; either end may be null (open).
+    // Two binary searches on the publish date index plus the slots between them.
+    public List<T> publishedBetween(LocalDate from, LocalDate to) {
         lock.readLock().lock();
         try {
-            List<T> sorted = new ArrayList<>(books);
-            sorted.sort(comparator);
-            return sorted;
+            List<T> result = new ArrayList<>();
+            BookIndexes<T> indexes = store.indexes();
+            if (indexes != null) {
+                indexes.forEachPublishedBetween(from, to, book -> result.add(attach(book)));
+                return result;
+            }
+            store.forEach(book -> {
+                LocalDate date = book.getPublishDate();
+                if (date != null && (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+                    result.add(attach(book));
+                }
+            });
+            result.sort(Comparator.comparing(Book::getPublishDate));
+            return result;
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    // Books published strictly after the date, oldest first
+    public List<T> publishedAfter(LocalDate date) {
+        return publishedBetween(date.plusDays(1), null);
+    }
+
+    // Counts of the books matching the query (null = all books) per bucket of each
+    // requested facet, in one pass over the matches found through the query plan.
+    // With no conditions nothing is scanned: availability, popularity and author
+    // counts come from the running totals and decades from the publish date index.
+    public FacetCounts facets(BookQuery query, Set<BookFacet> facets) {
+        lock.readLock().lock();
+        try {
+            if (query != null && !query.matchesAll()) {
+                FacetCounts.Counter counter = new FacetCounts.Counter(facets);
+                plan(query).execute(store, counter);
+                return counter.result(facets);
+            }
+            BookIndexes<T> indexes = store.indexes();
+            boolean scanDecades = facets.contains(BookFacet.DECADE) && indexes == null;
+            FacetCounts.Counter counter = new FacetCounts.Counter(
+                scanDecades ? EnumSet.of(BookFacet.DECADE) : EnumSet.noneOf(BookFacet.class));
+            if (scanDecades) store.forEach(counter);
+            CatalogStatistics totals = aggregates.snapshot();
+            counter.total = totals.getTotalBooks();
+            if (facets.contains(BookFacet.AVAILABILITY)) {
+                counter.availabilityCounts[0] = totals.getAvailableBooks();
+                counter.availabilityCounts[1] = totals.getBorrowedBooks();
+            }
+            if (facets.contains(BookFacet.POPULARITY)) {
+                counter.bandCounts[0] = aggregates.countBorrowCounts(Integer.MIN_VALUE, 0);
+                counter.bandCounts[1] = aggregates.countBorrowCounts(1, 5);
+                counter.bandCounts[2] = aggregates.countBorrowCounts(6, 20);
+                counter.bandCounts[3] = aggregates.countBorrowCounts(21, Integer.MAX_VALUE);
+            }
+            if (facets.contains(BookFacet.AUTHOR)) {
+                aggregates.forEachAuthor(counter::addAuthor);
+            }
+            if (facets.contains(BookFacet.DECADE) && !scanDecades) {
+                // One pair of binary searches per decade that has books
+                PublishDateIndex<T> dates = indexes.publishDates();
+                for (long day = dates.nextDay(Long.MIN_VALUE); day != Long.MAX_VALUE; ) {
+                    int start = FacetCounts.decade(LocalDate.ofEpochDay(day));
+                    long end = LocalDate.of(start + 10, 1, 1).toEpochDay();
+                    counter.addDecade(start, dates.count(day, end - 1));
+                    day = dates.nextDay(end);
+                }
+                counter.undated = indexes.undatedCount();
+            }
+            return counter.result(facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Books whose title is within a few typos of the given one, closest first and
+    // then most borrowed first. Allows 1 edit for short titles, 2 otherwise.
+    public List<T> fuzzyTitleSearch(String title, int limit) {
+        int length = FuzzyTitleIndex.normalize(title).length;
+        return fuzzyTitleSearch(title, length <= 5 ? 1 : 2, limit);
+    }
+
+    public List<T> fuzzyTitleSearch(String title, int maxDistance, int limit) {
+        lock.readLock().lock();
+        try {
+            BookIndexes<T> indexes = store.indexes();
+            List<FuzzyTitleIndex.Match<T>> matches = indexes != null
+                ? indexes.titles().search(title, maxDistance)
+                : scanForTitle(title, maxDistance);
+            // Borrow counts cannot change while the read lock is held, so the order is consistent
+            Map<T, Integer> distances = new IdentityHashMap<>();
+            for (FuzzyTitleIndex.Match<T> match : matches) {
+                for (T book : match.getBooks()) distances.put(book, match.getDistance());
+            }
+            List<T> ranked = new ArrayList<>(distances.keySet());
+            ranked.sort(Comparator.comparingInt((T book) -> distances.get(book))
+                                  .thenComparing(Comparator.comparingInt(Book::getBorrowCount).reversed())
+                                  .thenComparing(Comparator.naturalOrder()));
+            List<T> result = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (T book : ranked.subList(0, Math.min(limit, ranked.size()))) {
+                result.add(attach(book));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Titles starting with the prefix, most borrowed first (at most CompletionIndex.TOP_N)
+    public List<CompletionIndex.Completion> completeTitle(String prefix, int limit) {
+        return complete(prefix, limit, BookField.TITLE);
+    }
+
+    // Authors starting with the prefix, ranked by the borrows of all their books
+    public List<CompletionIndex.Completion> completeAuthor(String prefix, int limit) {
+        return complete(prefix, limit, BookField.AUTHOR);
+    }
+
+    private List<CompletionIndex.Completion> complete(String prefix, int limit, BookField field) {
+        lock.readLock().lock();
+        try {
+            BookIndexes<T> indexes = store.indexes();
+            if (indexes != null) {
+                CompletionIndex index = field == BookField.TITLE ? indexes.titleCompletions() : indexes.authorCompletions();
+                return index.complete(prefix, limit);
+            }
+            // No indexes: collect the matching texts in a throwaway index
+            String key = new String(FuzzyTitleIndex.normalize(prefix));
+            CompletionIndex matches = new CompletionIndex();
+            store.forEach(book -> {
+                String text = field == BookField.TITLE ? book.getTitle() : book.getAuthor();
+                if (text != null && new String(FuzzyTitleIndex.normalize(text)).startsWith(key)) {
+                    matches.add(text, book.getBorrowCount());
+                }
+            });
+            return matches.complete(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Stores without indexes compare every title; only the matches are kept
+    private List<FuzzyTitleIndex.Match<T>> scanForTitle(String title, int maxDistance) {
+        FuzzyTitleIndex<T> matches = new FuzzyTitleIndex<>();
+        char[] query = FuzzyTitleIndex.normalize(title);
+        store.forEach(book -> {
+            char[] candidate = FuzzyTitleIndex.normalize(book.getTitle());
+            if (Math.abs(candidate.length - query.length) <= maxDistance
+                    && FuzzyTitleIndex.distance(query, candidate) <= maxDistance) {
+                matches.add(book);
+            }
+        });
+        return matches.search(title, maxDistance);
+    }
+
+    // Sort books using Comparable (natural ordering)
+    public List<T> getSortedBooks() {
+        List<T> sorted = getAllBooks();
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    // Sort books using Comparator
+    public List<T> getSortedBooks(Comparator<? super T> comparator) {
+        List<T> sorted = getAllBooks();
+        sorted.sort(comparator);
+        return sorted;
+    }
+
     // Wildcard method - accepts any collection of books or subclasses
     public void printBooks(List<? extends Book> bookList) {
         for (Book book : bookList) {
@@ -111,7 +461,58 @@ public class LibraryCollection<T extends Book> {
     public void copyTo(List<? super T> destination) {
         lock.readLock().lock();
         try {
-            destination.addAll(books);
+            store.forEach(book -> destination.add(attach(book)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // A query result computed once and reused until one of the fields it reads
+    // changes on any book, or a book is added (see QueryCache). The key must identify
+    // the query including its parameters. compute runs under the read lock, so it
+    // may read the collection but must not modify it; treat the result as read-only.
+    public <R> R cached(String key, Set<BookField> dependsOn, Supplier<? extends R> compute) {
+        lock.readLock().lock();
+        try {
+            long stamp = generations[ADDED];
+            for (BookField field : dependsOn) {
+                stamp += generations[field.ordinal()];
+            }
+            return cache.get(key, stamp, compute);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public QueryCache getQueryCache() {
+        return cache;
+    }
+
+    // Totals kept up to date on every change; O(1), no scan
+    public CatalogStatistics getStatistics() {
+        lock.readLock().lock();
+        try {
+            return aggregates.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts for one author (exact name), or null if the author has no books
+    public CatalogStatistics.AuthorCounts getAuthorCounts(String author) {
+        lock.readLock().lock();
+        try {
+            return aggregates.author(author);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts for every author, sorted by name
+    public Map<String, CatalogStatistics.AuthorCounts> getAuthorCounts() {
+        lock.readLock().lock();
+        try {
+            return aggregates.authors();
         } finally {
             lock.readLock().unlock();
         }
@@ -120,9 +521,117 @@ public class LibraryCollection<T extends Book> {
     public int size() {
         lock.readLock().lock();
         try {
-            return books.size();
+            return store.size();
         } finally {
             lock.readLock().unlock();
         }
     }
+
+    // Point-in-time view of the collection, e.g. for writing a snapshot on another
+    // thread. Only the write lock is taken, briefly; afterwards the view is read
+    // without locking while borrowers keep changing books. Close it when done.
+    public View openView() {
+        lock.writeLock().lock();
+        try {
+            View view = new View(store.frozenView());
+            openViews.add(view);
+            return view;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Books as they were when the view was opened. A book changed since then is
+    // served from a copy taken just before its first change (copy-on-write).
+    public class View extends AbstractList<Book> implements Closeable {
+        private final List<T> books;
+        private final Map<Book, Book> preImages = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        private View(List<T> books) {
+            this.books = books;
+        }
+
+        // Called with the book's monitor and the write lock held, before the change
+        void beforeChange(Book book) {
+            if (!preImages.containsKey(book)) {
+                preImages.put(book, book.detachedCopy());
+            }
+        }
+
+        // Returns an unattached copy; holding the book's monitor means no change
+        // can be half-applied while it is read
+        @Override
+        public Book get(int index) {
+            Book book = books.get(index);
+            synchronized (book) {
+                Book preImage = preImages.get(book);
+                return preImage != null ? preImage : book.detachedCopy();
+            }
+        }
+
+        @Override
+        public int size() {
+            return books.size();
+        }
+
+        public int preImageCount() {
+            return preImages.size();
+        }
+
+        @Override
+        public void close() {
+            openViews.remove(this);
+        }
+    }
+
+    // Flush and release the underlying store
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            store.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Books read back from a disk-backed store are fresh copies; route their
+    // setters through this collection too
+    private T attach(T book) {
+        if (book.getListener() != changeListener) {
+            book.setListener(changeListener);
+        }
+        return book;
+    }
+
+    // Holds the write lock for the duration of an in-place change so readers never
+    // see the store and the book out of step
+    private class ChangeListener implements BookListener {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void beforeChange(Book book, BookField field) {
+            lock.writeLock().lock();
+            try {
+                for (View view : openViews) {
+                    view.beforeChange(book);
+                }
+                store.beforeChange((T) book, field);
+                generations[field.ordinal()]++;
+                if (CatalogAggregates.tracks(field)) aggregates.remove(book);
+            } catch (RuntimeException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void afterChange(Book book, BookField field) {
+            try {
+                if (CatalogAggregates.tracks(field)) aggregates.add(book);
+                store.afterChange((T) book, field);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
 }
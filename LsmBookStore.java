@@ -0,0 +1,745 @@
+package library;
+
+import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Embedded log-structured (LSM) book store for catalogs larger than the heap.
+//
+// Writes go to a sorted in-memory memtable of encoded records; when it fills up
+// it is flushed to an immutable sorted table file (SSTable). A flush then merges
+// tables whenever a newer one has grown to half the size of the one before it, so
+// the number of tables stays logarithmic. The merge runs synchronously on the
+// writing thread (under LibraryCollection's write lock), so the write that fills the
+// memtable pays for it, and occasionally for rewriting most of the store; size the
+// memtable accordingly. Heap use is the memtable plus, per table, a sparse index
+// (every 128th key) and a bloom filter.
+//
+// Books are keyed by ISBN. Further copies with the same ISBN get the ISBN plus a
+// unique suffix, which sorts right after the ISBN and before any longer one; books
+// without an ISBN get a synthetic key that sorts after every ISBN. Reads return the
+// instance already in use for a key while anything still references it, so a book
+// has one mutable instance whose changes LibraryCollection sees. The memtable is
+// not logged: durability across crashes still comes from CatalogSnapshot and
+// TransactionJournal, this store provides capacity.
+public class LsmBookStore implements BookStore<Book> {
+    private static final String ANONYMOUS_PREFIX = "\uffff";
+    private static final char COPY_SEPARATOR = '\u0000';  // ISBN + separator + id: a further copy
+    private static final char COPIES_END = '\u0001';  // ISBN + this sorts after all its copies
+    private static final String META_FILE = "store.meta";
+    private static final int META_MAGIC = 0x4C42534D; // "LBSM"
+    private static final int META_VERSION = 2;  // 2: a copies flag per table
+    private static final long DEFAULT_MEMTABLE_BYTES = 32L << 20;
+    private static final int MAX_TABLES = 12;
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private final Path directory;
+    private final long memtableLimit;
+    private TreeMap<String, byte[]> memtable = new TreeMap<>();
+    private long memtableBytes;
+    private final List<SSTable> tables = new ArrayList<>();  // newest first
+    private long nextTableId = 1;
+    private long nextAnonymousId = 1;
+    private long liveCount;
+    // Key -> the instance handed out for it; reads run concurrently under the read lock
+    private final ConcurrentHashMap<String, LiveRef> live = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Book> collected = new ReferenceQueue<>();
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(128);
+    private final DataOutputStream encodeOut = new DataOutputStream(encodeBuffer);
+
+    public LsmBookStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_BYTES);
+    }
+
+    public LsmBookStore(Path directory, long memtableLimit) throws IOException {
+        this.directory = directory;
+        this.memtableLimit = memtableLimit;
+        Files.createDirectories(directory);
+        loadMeta();
+    }
+
+    // ---------- BookStore ----------
+
+    @Override
+    public void add(Book book) {
+        String isbn = book.getIsbn();
+        String key = isbn == null ? nextAnonymousKey() : exists(isbn) ? nextCopyKey(isbn) : isbn;
+        book.storeKey = key;
+        if (!exists(key)) liveCount++;
+        put(key, encode(book));
+        expunge();
+        live.put(key, new LiveRef(book, key, collected));
+    }
+
+    @Override
+    public void beforeChange(Book book, BookField field) {
+        if (field == BookField.ISBN && book.storeKey != null) {
+            if (exists(book.storeKey)) liveCount--;
+            put(book.storeKey, TOMBSTONE);
+            LiveRef ref = live.get(book.storeKey);
+            if (ref != null && ref.get() == book) live.remove(book.storeKey, ref);
+        }
+    }
+
+    @Override
+    public void afterChange(Book book, BookField field) {
+        if (field == BookField.ISBN || book.storeKey == null) {
+            add(book);
+        } else {
+            put(book.storeKey, encode(book));
+        }
+    }
+
+    @Override
+    public Optional<Book> findByIsbn(String isbn) {
+        if (isbn == null) return Optional.empty();
+        byte[] value = get(isbn);
+        if (value != null) return Optional.of(decode(isbn, value));
+        // The first copy's key may be gone (its ISBN changed) while later copies remain
+        if (!mayHaveCopies(isbn)) return Optional.empty();
+        List<Book> next = scan(isbn, 1, true);
+        return next.isEmpty() || !next.get(0).storeKey.startsWith(isbn + COPY_SEPARATOR)
+            ? Optional.empty() : Optional.of(next.get(0));
+    }
+
+    // Copies of afterIsbn are skipped along with it
+    @Override
+    public List<Book> scanByIsbn(String afterIsbn, int limit) {
+        return scan(afterIsbn == null ? null : afterIsbn + COPIES_END, limit, true);
+    }
+
+    // Storage order is key order, so both orders page straight off the merged scan
+    @Override
+    public List<Book> scan(BookOrder order, String cursor, int limit) {
+        switch (order) {
+            case STORAGE:
+                return scan(cursor, limit, false);
+            case ISBN:
+                return scan(cursor, limit, true);  // the cursor is a key, so copies are not skipped
+            default:
+                return BookStore.super.scan(order, cursor, limit);
+        }
+    }
+
+    @Override
+    public String cursorOf(BookOrder order, Book book) {
+        return order == BookOrder.STORAGE || order == BookOrder.ISBN ? book.storeKey : BookStore.super.cursorOf(order, book);
+    }
+
+    // Full scan in key order, fetched in bounded batches
+    @Override
+    public void forEach(Consumer<? super Book> action) {
+        String after = null;
+        while (true) {
+            List<Book> batch = scan(after, 4096, false);
+            if (batch.isEmpty()) return;
+            batch.forEach(action);
+            after = batch.get(batch.size() - 1).storeKey;
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, liveCount);
+    }
+
+    public long count() { return liveCount; }
+    public int tableCount() { return tables.size(); }
+
+    // Flush the memtable and record the table list
+    public void flush() throws IOException {
+        if (!memtable.isEmpty()) {
+            SSTable table = SSTable.write(tablePath(nextTableId++), memtable.entrySet().iterator(), memtable.size(), false);
+            tables.add(0, table);
+            memtable = new TreeMap<>();
+            memtableBytes = 0;
+            compact();
+        }
+        saveMeta();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (SSTable table : tables) {
+            table.close();
+        }
+    }
+
+    // ---------- key/value layer ----------
+
+    private String nextAnonymousKey() {
+        return ANONYMOUS_PREFIX + String.format("%016x", nextAnonymousId++);
+    }
+
+    private String nextCopyKey(String isbn) {
+        return isbn + COPY_SEPARATOR + String.format("%016x", nextAnonymousId++);
+    }
+
+    private void put(String key, byte[] value) {
+        byte[] previous = memtable.put(key, value);
+        memtableBytes += value.length + key.length() * 2L + 64 - (previous != null ? previous.length + 64 : 0);
+        if (memtableBytes >= memtableLimit) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Latest value for a key, or null if absent or deleted
+    private byte[] get(String key) {
+        byte[] value = memtable.get(key);
+        if (value == null) {
+            for (SSTable table : tables) {
+                value = table.get(key);
+                if (value != null) break;
+            }
+        }
+        return value == null || value == TOMBSTONE || value.length == 0 ? null : value;
+    }
+
+    private boolean exists(String key) {
+        return get(key) != null;
+    }
+
+    // Tables holding copies add each copy's ISBN + COPY_SEPARATOR to their bloom filter
+    private boolean mayHaveCopies(String isbn) {
+        String prefix = isbn + COPY_SEPARATOR;
+        String next = memtable.ceilingKey(prefix);
+        if (next != null && next.startsWith(prefix)) return true;
+        for (SSTable table : tables) {
+            if (table.hasCopies && SSTable.bloomMightContain(table.bloom, prefix)) return true;
+        }
+        return false;
+    }
+
+    // Merge memtable and tables from just after a key, newest version of each key wins
+    private List<Book> scan(String after, int limit, boolean isbnOnly) {
+        List<Source> sources = new ArrayList<>(tables.size() + 1);
+        Map<String, byte[]> mem = after == null ? memtable : memtable.tailMap(after, false);
+        sources.add(new MemtableSource(mem.entrySet().iterator(), 0));
+        for (int i = 0; i < tables.size(); i++) {
+            sources.add(tables.get(i).scanner(after, i + 1));
+        }
+
+        PriorityQueue<Source> heap = new PriorityQueue<>(SOURCE_ORDER);
+        for (Source source : sources) {
+            if (source.advance()) heap.add(source);
+        }
+
+        List<Book> result = new ArrayList<>(Math.min(limit, 4096));
+        try {
+            while (!heap.isEmpty() && result.size() < limit) {
+                Source top = heap.poll();
+                String key = top.key;
+                byte[] value = top.value;
+                if (top.advance()) heap.add(top);
+                while (!heap.isEmpty() && heap.peek().key.equals(key)) {  // older versions
+                    Source older = heap.poll();
+                    if (older.advance()) heap.add(older);
+                }
+                if (isbnOnly && key.startsWith(ANONYMOUS_PREFIX)) break;
+                if (value.length > 0) {
+                    result.add(decode(key, value));
+                }
+            }
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+        return result;
+    }
+
+    // Merge neighbouring tables while the newer one has caught up with the older,
+    // giving geometrically growing table sizes
+    private void compact() throws IOException {
+        while (tables.size() >= 2
+               && (tables.get(0).fileSize * 2 >= tables.get(1).fileSize || tables.size() > MAX_TABLES)) {
+            SSTable newer = tables.get(0);
+            SSTable older = tables.get(1);
+            boolean bottom = tables.size() == 2;  // nothing older can hold a shadowed key
+            List<Source> inputs = Arrays.asList(newer.scanner(null, 0), older.scanner(null, 1));
+            Iterator<Map.Entry<String, byte[]>> merged = mergeIterator(inputs);
+            SSTable result = SSTable.write(tablePath(nextTableId++), merged,
+                                           newer.entryCount + older.entryCount, bottom);
+            for (Source input : inputs) input.close();
+            tables.remove(0);
+            tables.set(0, result);
+            saveMeta();
+            newer.delete();
+            older.delete();
+        }
+    }
+
+    private static Iterator<Map.Entry<String, byte[]>> mergeIterator(List<Source> inputs) {
+        PriorityQueue<Source> heap = new PriorityQueue<>(SOURCE_ORDER);
+        for (Source input : inputs) {
+            if (input.advance()) heap.add(input);
+        }
+        return new Iterator<Map.Entry<String, byte[]>>() {
+            @Override
+            public boolean hasNext() { return !heap.isEmpty(); }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                Source top = heap.poll();
+                Map.Entry<String, byte[]> entry = new AbstractMap.SimpleImmutableEntry<>(top.key, top.value);
+                if (top.advance()) heap.add(top);
+                while (!heap.isEmpty() && heap.peek().key.equals(entry.getKey())) {
+                    Source older = heap.poll();
+                    if (older.advance()) heap.add(older);
+                }
+                return entry;
+            }
+        };
+    }
+
+    // Only called on the write path, which LibraryCollection serializes
+    private byte[] encode(Book book) {
+        try {
+            encodeBuffer.reset();
+            BookCodec.write(encodeOut, book);
+            return encodeBuffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The live instance for key if there is one, otherwise a newly decoded one that becomes it
+    private Book decode(String key, byte[] value) {
+        LiveRef ref = live.get(key);
+        Book book = ref != null ? ref.get() : null;
+        if (book != null) return book;
+        expunge();
+        Book decoded = BookCodec.read(ByteBuffer.wrap(value), 0);
+        decoded.storeKey = key;
+        Book[] result = new Book[1];
+        live.compute(key, (k, current) -> {
+            Book existing = current != null ? current.get() : null;
+            result[0] = existing != null ? existing : decoded;  // another reader may have won
+            return existing != null ? current : new LiveRef(decoded, k, collected);
+        });
+        return result[0];
+    }
+
+    // Drop entries whose instance has been collected
+    private void expunge() {
+        for (LiveRef ref; (ref = (LiveRef) collected.poll()) != null; ) {
+            live.remove(ref.key, ref);
+        }
+    }
+
+    private static class LiveRef extends WeakReference<Book> {
+        final String key;
+
+        LiveRef(Book book, String key, ReferenceQueue<Book> queue) {
+            super(book, queue);
+            this.key = key;
+        }
+    }
+
+    private Path tablePath(long id) {
+        return directory.resolve(String.format("sst-%08d.dat", id));
+    }
+
+    // ---------- metadata ----------
+
+    // Layout: int magic, int version, long liveCount, long nextAnonymousId, long nextTableId,
+    //         int tableCount, tableCount x (long table id, boolean hasCopies) (newest first)
+    // Version 1 had no version field and no copies flags, and no table held copies.
+    private void saveMeta() throws IOException {
+        Path meta = directory.resolve(META_FILE);
+        Path temp = directory.resolve(META_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(META_MAGIC);
+            out.writeInt(META_VERSION);
+            out.writeLong(liveCount);
+            out.writeLong(nextAnonymousId);
+            out.writeLong(nextTableId);
+            out.writeInt(tables.size());
+            for (SSTable table : tables) {
+                out.writeLong(table.id);
+                out.writeBoolean(table.hasCopies);
+            }
+        }
+        Files.move(temp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadMeta() throws IOException {
+        Path meta = directory.resolve(META_FILE);
+        Set<Path> live = new HashSet<>();
+        if (Files.exists(meta)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(meta)))) {
+                if (in.readInt() != META_MAGIC) throw new IOException("Not a book store: " + directory);
+                // Version 1 began with liveCount, which never reaches 2^32, so its high half reads as 0
+                in.mark(4);
+                int version = in.readInt();
+                if (version == 0) in.reset();
+                else if (version != META_VERSION) throw new IOException("Unsupported book store version " + version);
+                liveCount = in.readLong();
+                nextAnonymousId = in.readLong();
+                nextTableId = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long id = in.readLong();
+                    Path path = tablePath(id);
+                    SSTable table = SSTable.open(path, id);
+                    table.hasCopies = version != 0 && in.readBoolean();
+                    tables.add(table);
+                    live.add(path);
+                }
+            }
+        }
+        // Tables left over from an interrupted flush or compaction
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sst-*.dat*")) {
+            for (Path file : files) {
+                if (!live.contains(file)) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // ---------- merge sources ----------
+
+    private static final Comparator<Source> SOURCE_ORDER = (a, b) -> {
+        int cmp = a.key.compareTo(b.key);
+        return cmp != 0 ? cmp : Integer.compare(a.rank, b.rank);  // lower rank = newer
+    };
+
+    private abstract static class Source implements Closeable {
+        final int rank;
+        String key;
+        byte[] value;
+
+        Source(int rank) { this.rank = rank; }
+
+        abstract boolean advance();
+
+        @Override
+        public void close() { }
+    }
+
+    private static class MemtableSource extends Source {
+        private final Iterator<Map.Entry<String, byte[]>> entries;
+
+        MemtableSource(Iterator<Map.Entry<String, byte[]>> entries, int rank) {
+            super(rank);
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (!entries.hasNext()) return false;
+            Map.Entry<String, byte[]> entry = entries.next();
+            key = entry.getKey();
+            value = entry.getValue();
+            return true;
+        }
+    }
+
+    // ---------- sorted table files ----------
+
+    // Layout: entries (u16 keyLen, key, int valueLen or -1 for a tombstone, value)
+    //         index   (int count, count x (u16 keyLen, key, long offset)) - every INDEX_INTERVAL-th entry
+    //         bloom   (int hashes, int words, words x long)
+    //         footer  (long indexPos, long bloomPos, long entryCount, int magic)
+    private static class SSTable implements Closeable {
+        private static final int INDEX_INTERVAL = 128;
+        private static final int TABLE_MAGIC = 0x4C425354; // "LBST"
+        private static final int FOOTER_SIZE = 28;
+        private static final int BLOOM_BITS_PER_KEY = 10;
+        private static final int BLOOM_HASHES = 7;
+
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        final long fileSize;
+        final long dataEnd;
+        final long entryCount;
+        final String[] indexKeys;
+        final long[] indexOffsets;
+        final long[] bloom;
+        boolean hasCopies;  // any key is a further copy of an ISBN (kept in the store's meta file)
+
+        private SSTable(long id, Path path, FileChannel channel, long fileSize, long dataEnd, long entryCount,
+                        String[] indexKeys, long[] indexOffsets, long[] bloom) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.dataEnd = dataEnd;
+            this.entryCount = entryCount;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.bloom = bloom;
+        }
+
+        static SSTable write(Path path, Iterator<Map.Entry<String, byte[]>> entries, long expected,
+                             boolean dropTombstones) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            long[] bloom = new long[(int) Math.max(1, (Math.max(1, expected) * BLOOM_BITS_PER_KEY + 63) / 64)];
+            List<String> indexKeys = new ArrayList<>();
+            List<Long> indexOffsets = new ArrayList<>();
+            long position = 0;
+            long count = 0;
+            boolean copies = false;
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                while (entries.hasNext()) {
+                    Map.Entry<String, byte[]> entry = entries.next();
+                    byte[] value = entry.getValue();
+                    if (dropTombstones && value.length == 0) continue;
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    if (count % INDEX_INTERVAL == 0) {
+                        indexKeys.add(entry.getKey());
+                        indexOffsets.add(position);
+                    }
+                    bloomAdd(bloom, entry.getKey());
+                    int copy = entry.getKey().indexOf(COPY_SEPARATOR);
+                    if (copy >= 0) {
+                        bloomAdd(bloom, entry.getKey().substring(0, copy + 1));
+                        copies = true;
+                    }
+                    out.writeShort(key.length);
+                    out.write(key);
+                    out.writeInt(value.length == 0 ? -1 : value.length);
+                    out.write(value);
+                    position += 2 + key.length + 4 + value.length;
+                    count++;
+                }
+                long indexPos = position;
+                out.writeInt(indexKeys.size());
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    byte[] key = indexKeys.get(i).getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(key.length);
+                    out.write(key);
+                    out.writeLong(indexOffsets.get(i));
+                    position += 2 + key.length + 8;
+                }
+                position += 4;
+                long bloomPos = position;
+                out.writeInt(BLOOM_HASHES);
+                out.writeInt(bloom.length);
+                for (long word : bloom) {
+                    out.writeLong(word);
+                }
+                out.writeLong(indexPos);
+                out.writeLong(bloomPos);
+                out.writeLong(count);
+                out.writeInt(TABLE_MAGIC);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            SSTable table = open(path, idOf(path));
+            table.hasCopies = copies;
+            return table;
+        }
+
+        static SSTable open(Path path, long id) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+                readFully(channel, footer, size - FOOTER_SIZE);
+                long indexPos = footer.getLong(0);
+                long bloomPos = footer.getLong(8);
+                long entryCount = footer.getLong(16);
+                if (footer.getInt(24) != TABLE_MAGIC) throw new IOException("Corrupt table " + path);
+
+                ByteBuffer meta = ByteBuffer.allocate((int) (size - FOOTER_SIZE - indexPos));
+                readFully(channel, meta, indexPos);
+                meta.flip();
+                int indexCount = meta.getInt();
+                String[] keys = new String[indexCount];
+                long[] offsets = new long[indexCount];
+                for (int i = 0; i < indexCount; i++) {
+                    byte[] key = new byte[meta.getShort() & 0xFFFF];
+                    meta.get(key);
+                    keys[i] = new String(key, StandardCharsets.UTF_8);
+                    offsets[i] = meta.getLong();
+                }
+                meta.position((int) (bloomPos - indexPos));
+                meta.getInt();  // hash count, fixed at BLOOM_HASHES
+                long[] bloom = new long[meta.getInt()];
+                for (int i = 0; i < bloom.length; i++) {
+                    bloom[i] = meta.getLong();
+                }
+                return new SSTable(id, path, channel, size, indexPos, entryCount, keys, offsets, bloom);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private static long idOf(Path path) {
+            String name = path.getFileName().toString();
+            return Long.parseLong(name.substring(4, name.indexOf('.')));
+        }
+
+        // Value for a key: a record, TOMBSTONE, or null if the table does not contain it
+        byte[] get(String key) {
+            if (!bloomMightContain(bloom, key)) return null;
+            int block = blockFor(key);
+            if (block < 0) return null;
+            long start = indexOffsets[block];
+            long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+            ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+            try {
+                readFully(channel, buf, start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                byte[] keyBytes = new byte[buf.getShort() & 0xFFFF];
+                buf.get(keyBytes);
+                int length = buf.getInt();
+                int cmp = new String(keyBytes, StandardCharsets.UTF_8).compareTo(key);
+                if (cmp == 0) {
+                    if (length < 0) return TOMBSTONE;
+                    byte[] value = new byte[length];
+                    buf.get(value);
+                    return value;
+                }
+                if (cmp > 0) return null;
+                buf.position(buf.position() + Math.max(0, length));
+            }
+            return null;
+        }
+
+        // Last index block whose first key is <= key, or -1
+        private int blockFor(String key) {
+            int low = 0;
+            int high = indexKeys.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexKeys[mid].compareTo(key) <= 0) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        // Sequential reader positioned at the first key greater than after
+        Source scanner(String after, int rank) {
+            long start = 0;
+            if (after != null) {
+                int block = blockFor(after);
+                start = block < 0 ? 0 : indexOffsets[block];
+            }
+            long from = start;
+            return new Source(rank) {
+                private long position = from;
+                private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).flip();
+
+                @Override
+                boolean advance() {
+                    try {
+                        while (position < dataEnd) {
+                            byte[] keyLength = read(2);
+                            String k = new String(read(((keyLength[0] & 0xFF) << 8) | (keyLength[1] & 0xFF)),
+                                                  StandardCharsets.UTF_8);
+                            int length = ByteBuffer.wrap(read(4)).getInt();
+                            byte[] v = length < 0 ? TOMBSTONE : read(length);
+                            if (after == null || k.compareTo(after) > 0) {
+                                key = k;
+                                value = v;
+                                return true;
+                            }
+                        }
+                        return false;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                private byte[] read(int length) throws IOException {
+                    byte[] out = new byte[length];
+                    int filled = 0;
+                    while (filled < length) {
+                        if (!buf.hasRemaining()) {
+                            buf.clear();
+                            readAvailable(channel, buf, position);
+                            buf.flip();
+                            if (!buf.hasRemaining()) throw new EOFException("Truncated table " + path);
+                        }
+                        int n = Math.min(length - filled, buf.remaining());
+                        buf.get(out, filled, n);
+                        filled += n;
+                        position += n;
+                    }
+                    return out;
+                }
+            };
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(path);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, position);
+                if (n < 0) throw new EOFException();
+                position += n;
+            }
+        }
+
+        private static void readAvailable(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+            channel.read(buf, position);
+        }
+
+        // 64-bit FNV-1a over the key's chars, split into two hashes for double hashing
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h ^ (h >>> 29);
+        }
+
+        private static void bloomAdd(long[] bits, String key) {
+            long h = hash(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            long m = bits.length * 64L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, m);
+                bits[(int) (bit >>> 6)] |= 1L << (bit & 63);
+            }
+        }
+
+        private static boolean bloomMightContain(long[] bits, String key) {
+            long h = hash(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            long m = bits.length * 64L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, m);
+                if ((bits[(int) (bit >>> 6)] & (1L << (bit & 63))) == 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package library;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read-only, memory-mapped catalog file. Opening only maps the file and reads the
+// header; Book objects are decoded on first access and cached afterwards. It is an
+// export and ISBN lookup index, not the startup path: recovery still reads the whole
+// snapshot (CatalogSnapshot) into the working set, and books decoded from here are
+// detached copies that do not see later changes.
+public class MappedCatalog implements Closeable {
+    // File layout:
+    //   header (32 bytes): int magic, int version, int count, int isbnCount,
+    //                      long offsetTablePos, long isbnTablePos
+    //   offset table:      count x long    (absolute position of each record)
+    //   ISBN table:        isbnCount x int (record numbers sorted by ISBN)
+    //   records:           BookCodec records
+    private static final int MAGIC = 0x4C42434B; // "LBCK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int isbnCount;
+    private final int offsetTablePos;
+    private final int isbnTablePos;
+    private final Map<Integer, Book> materialized = new ConcurrentHashMap<>();
+
+    private MappedCatalog(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        this.isbnCount = buffer.getInt(12);
+        this.offsetTablePos = (int) buffer.getLong(16);
+        this.isbnTablePos = (int) buffer.getLong(24);
+    }
+
+    // Map an existing catalog file; cost is independent of the number of books
+    public static MappedCatalog open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog file exceeds the 2 GB mapping limit");
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("Catalog file is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedCatalog(channel, buffer);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Write books in catalog layout; the file is written to a temp file and moved into place
+    public static void write(List<? extends Book> books, String filename) throws IOException {
+        int count = books.size();
+        Integer[] byIsbn = new Integer[count];
+        String[] isbns = new String[count];  // getIsbn decodes a packed ISBN, so once per book
+        int isbnCount = 0;
+        for (int i = 0; i < count; i++) {
+            isbns[i] = books.get(i).getIsbn();
+            if (isbns[i] != null) {
+                byIsbn[isbnCount++] = i;
+            }
+        }
+        Arrays.sort(byIsbn, 0, isbnCount, Comparator.comparing(i -> isbns[i]));
+
+        long offsetTablePos = HEADER_SIZE;
+        long isbnTablePos = offsetTablePos + (long) count * Long.BYTES;
+        long recordsPos = isbnTablePos + (long) isbnCount * Integer.BYTES;
+        long[] offsets = new long[count];
+
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Records first, so the offsets are known when the tables are written
+            out.position(recordsPos);
+            DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+            long position = recordsPos;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                int before = data.size();
+                BookCodec.write(data, books.get(i));
+                position += data.size() - before;
+            }
+            data.flush();
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Catalog exceeds the 2 GB mapping limit");
+            }
+
+            ByteBuffer table = ByteBuffer.allocate(1 << 16);
+            out.position(0);
+            table.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(isbnCount)
+                 .putLong(offsetTablePos).putLong(isbnTablePos);
+            for (int i = 0; i < count; i++) {
+                if (table.remaining() < Long.BYTES) drain(table, out);
+                table.putLong(offsets[i]);
+            }
+            for (int i = 0; i < isbnCount; i++) {
+                if (table.remaining() < Integer.BYTES) drain(table, out);
+                table.putInt(byIsbn[i]);
+            }
+            drain(table, out);
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void drain(ByteBuffer table, FileChannel out) throws IOException {
+        table.flip();
+        while (table.hasRemaining()) {
+            out.write(table);
+        }
+        table.clear();
+    }
+
+    public int size() { return count; }
+
+    // Materialize the book at a position (decoded once, then cached)
+    public Book get(int index) {
+        Objects.checkIndex(index, count);
+        return materialized.computeIfAbsent(index, i -> BookCodec.read(buffer, recordOffset(i)));
+    }
+
+    // Lightweight views that read a single field straight from the mapping
+    public String titleAt(int index) {
+        Objects.checkIndex(index, count);
+        return BookCodec.titleAt(buffer, recordOffset(index));
+    }
+
+    public String authorAt(int index) {
+        Objects.checkIndex(index, count);
+        return BookCodec.authorAt(buffer, recordOffset(index));
+    }
+
+    // Binary search over the ISBN table; only the matching book is materialized
+    public Optional<Book> findByIsbn(String isbn) {
+        if (isbn == null) return Optional.empty();
+        int low = 0;
+        int high = isbnCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = buffer.getInt(isbnTablePos + mid * Integer.BYTES);
+            int cmp = BookCodec.isbnAt(buffer, recordOffset(index)).compareTo(isbn);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return Optional.of(get(index));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Random-access list view; elements are materialized as they are touched
+    public List<Book> asList() {
+        return new AbstractList<Book>() {
+            @Override
+            public Book get(int index) { return MappedCatalog.this.get(index); }
+
+            @Override
+            public int size() { return count; }
+        };
+    }
+
+    public int materializedCount() { return materialized.size(); }
+
+    private int recordOffset(int index) {
+        return (int) buffer.getLong(offsetTablePos + index * Long.BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,166 @@
+package library;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Heap saved by StringPool: imports the same CSV catalog twice, once with pooling
+// off and once with it on, and builds the same student roster both ways, measuring
+// the growth of used heap (after GC) each time. The pooled figures include what the
+// pools themselves took on.
+//
+// The catalog mimics a real one: a few prolific authors and a long tail (the i-th
+// most prolific author writes about 1/i as many books), several copies of popular
+// titles, and students spread unevenly over a few dozen departments.
+//
+// With --footprint it instead measures what a Book costs on its own: footprint books
+// sharing one title and author string, each with its own ISBN and publish date, held
+// first in an array and then in a LibraryCollection. Needs a large heap at 10M books
+// (-Xmx8g).
+//
+// Usage: java library.MemoryBenchmark [books] [students]
+//        java library.MemoryBenchmark --footprint [books]
+public class MemoryBenchmark {
+    private static final String[] FIRST = {"Robert", "Joshua", "Martin", "Kent", "Andrew", "Brian", "Donald",
+        "Barbara", "Grace", "Ada", "Linus", "Margaret", "Edsger", "Niklaus", "Frederick", "Eric", "Steve",
+        "Bjarne", "James", "Guido", "Ken", "Dennis", "Alan", "John", "Mary", "Sandi", "Sarah", "David",
+        "Michael", "Anna", "Erich", "Richard", "Ralph", "Tom", "Gerald", "Harold", "Leslie", "Butler",
+        "Frances", "Radia"};
+    private static final String[] LAST = {"Martin", "Bloch", "Fowler", "Beck", "Hunt", "Kernighan", "Knuth",
+        "Liskov", "Hopper", "Lovelace", "Torvalds", "Hamilton", "Dijkstra", "Wirth", "Brooks", "Evans",
+        "McConnell", "Stroustrup", "Gosling", "van Rossum", "Thompson", "Ritchie", "Kay", "McCarthy",
+        "Shaw", "Metz", "Drasner", "Parnas", "Feathers", "Karpov", "Gamma", "Helm", "Johnson", "Vlissides",
+        "Sussman", "Abelson", "Lamport", "Lampson", "Allen", "Perlman", "Hoare", "Milner", "Backus",
+        "Naur", "Cerf", "Kahn", "Postel", "Berners-Lee", "Tanenbaum", "Bentley"};
+    private static final String[] WORDS = {"Clean", "Effective", "Modern", "Practical", "Applied", "Advanced",
+        "Introduction to", "Patterns of", "Principles of", "Structure and Interpretation of", "The Art of",
+        "Mastering", "Programming", "Algorithms", "Systems", "Design", "Architecture", "Concurrency",
+        "Networks", "Databases", "Compilers", "Security", "Testing", "Refactoring", "Java", "Python",
+        "Distributed", "Functional", "Software", "Engineering", "Data", "Machine Learning", "Operating",
+        "Computation", "Logic", "Mathematics", "Craftsmanship", "Performance", "in Practice", "Explained"};
+    private static final String[] DEPARTMENTS = {"Computer Science", "Information Technology", "Mathematics",
+        "Physics", "Chemistry", "Biology", "Electrical Engineering", "Mechanical Engineering",
+        "Civil Engineering", "Economics", "Business Administration", "Psychology", "Philosophy", "History",
+        "English Literature", "Linguistics", "Law", "Medicine", "Nursing", "Architecture", "Fine Arts",
+        "Music", "Statistics", "Political Science", "Sociology", "Geography", "Education",
+        "Environmental Science", "Data Science", "Journalism"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--footprint")) {
+            footprint(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+            return;
+        }
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int students = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        Path csv = Files.createTempFile("memory-bench", ".csv");
+        System.out.println("=== MEMORY BENCHMARK: " + books + " books, " + students + " students ===");
+        try {
+            StringPool.enabled = false;
+            FileManager.exportToCSV(catalog(books, new Random(42)), csv.toString());
+            long unpooledBooks = importCatalog(csv);
+            long unpooledStudents = roster(students);
+
+            StringPool.enabled = true;
+            long pooledBooks = importCatalog(csv);
+            long pooledStudents = roster(students);
+
+            report("Books", unpooledBooks, pooledBooks, books);
+            report("Students", unpooledStudents, pooledStudents, students);
+            System.out.println("Authors:     " + StringPool.AUTHORS);
+            System.out.println("Titles:      " + StringPool.TITLES);
+            System.out.println("Departments: " + StringPool.DEPARTMENTS);
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static void footprint(int count) {
+        System.out.println("=== BOOK FOOTPRINT: " + count + " books ===");
+        Random random = new Random(42);
+        long before = usedHeap();
+        Book[] books = new Book[count];
+        for (int i = 0; i < count; i++) {
+            books[i] = new Book("Title", "Author", isbn(i), LocalDate.ofEpochDay(random.nextInt(20_000)));
+        }
+        long bare = usedHeap() - before - (long) count * 4;  // less the array's reference slots
+        System.out.printf("Per book:               %,d bytes%n", bare / count);
+
+        LibraryCollection<Book> library = new LibraryCollection<>();
+        library.addAll(Arrays.asList(books));
+        books = null;
+        long stored = usedHeap() - before;
+        System.out.printf("Per book in collection: %,d bytes%n", stored / Math.max(1, library.size()));
+    }
+
+    // 978-0-NNNNNN-NN-C: hyphenated ISBN-13 as printed on books
+    private static String isbn(int n) {
+        String digits = String.format("%09d", n);
+        return "978-" + digits.charAt(0) + "-" + digits.substring(1, 6) + "-" + digits.substring(6) + "-" + n % 10;
+    }
+
+    // Heap taken by a freshly imported catalog, measured while it is still reachable
+    private static long importCatalog(Path csv) throws IOException {
+        long before = usedHeap();
+        LibraryCollection<Book> library = new LibraryCollection<>();
+        CsvImporter.importFile(csv.toString(), library);
+        long used = usedHeap() - before;
+        if (library.size() == 0) System.out.println("✗ Nothing imported");
+        return used;
+    }
+
+    // Departments as read from the registry: a new String per student
+    private static long roster(int count) {
+        long before = usedHeap();
+        Random random = new Random(7);
+        List<Student> roster = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String department = new String(DEPARTMENTS[skewed(random, DEPARTMENTS.length)].toCharArray());
+            roster.add(new Student("Student " + i, 1001 + i, department));
+        }
+        long used = usedHeap() - before;
+        if (roster.isEmpty()) System.out.println("✗ No students");
+        return used;
+    }
+
+    private static List<Book> catalog(int count, Random random) {
+        int authors = Math.max(1, count / 12);
+        int titles = Math.max(1, count * 3 / 4);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Popular titles come in several copies; most titles in just one
+            int title = random.nextInt(4) == 0 ? skewed(random, titles) : random.nextInt(titles);
+            int author = skewed(random, authors);
+            books.add(new Book(title(title), author(author), String.format("978-%010d", i),
+                               LocalDate.ofEpochDay(random.nextInt(20_000))));
+        }
+        return books;
+    }
+
+    private static String author(int n) {
+        return FIRST[n % FIRST.length] + " " + (n >= FIRST.length * LAST.length ? (char) ('A' + n / 2000 % 26) + ". " : "")
+            + LAST[n / FIRST.length % LAST.length];
+    }
+
+    private static String title(int n) {
+        return WORDS[n % WORDS.length] + " " + WORDS[n / WORDS.length % WORDS.length] + " "
+            + WORDS[n / (WORDS.length * WORDS.length) % WORDS.length] + " (" + (n / 64_000 + 1) + ")";
+    }
+
+    // Index in [0, n) with probability roughly proportional to 1 / (index + 1)
+    private static int skewed(Random random, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.pow(n + 1, random.nextDouble())) - 1);
+    }
+
+    private static void report(String label, long unpooled, long pooled, int count) {
+        System.out.printf("%-9s unpooled %,7d KB, pooled %,7d KB, saved %,7d KB (%.1f%%, %,d bytes per record)%n",
+                          label + ":", unpooled >> 10, pooled >> 10, (unpooled - pooled) >> 10,
+                          100.0 * (unpooled - pooled) / unpooled, (unpooled - pooled) / Math.max(1, count));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
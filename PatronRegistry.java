@@ -0,0 +1,166 @@
+package library;
+
+import java.io.*;
+import java.util.*;
+
+// Compact binary registry of students and staff, including the ID allocator state.
+// New registrations are appended; the file is never rewritten.
+public class PatronRegistry implements Closeable {
+    // Layout: header (int magic, int version, int nextStudentId, int nextStaffId)
+    //         records: u8 type, int id, name, [department] (BookCodec string encoding)
+    private static final int MAGIC = 0x4C425052; // "LBPR"
+    private static final int VERSION = 1;
+    private static final int COUNTERS_POS = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int TYPE_STUDENT = 1;
+    private static final int TYPE_STAFF = 2;
+
+    private final RandomAccessFile file;
+    private final Map<Integer, Student> students = new HashMap<>();
+    private final Map<Integer, Staff> staff = new HashMap<>();
+    private int nextStudentId;
+    private int nextStaffId;
+    private long loadNanos;
+
+    private PatronRegistry(RandomAccessFile file, int nextStudentId, int nextStaffId) {
+        this.file = file;
+        this.nextStudentId = nextStudentId;
+        this.nextStaffId = nextStaffId;
+    }
+
+    // Open (or create) a registry; the defaults seed the ID allocators of a new file
+    public static PatronRegistry open(String filename, int firstStudentId, int firstStaffId) throws IOException {
+        File path = new File(filename);
+        boolean exists = path.exists() && path.length() >= HEADER_SIZE;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            PatronRegistry registry = new PatronRegistry(file, firstStudentId, firstStaffId);
+            if (exists) {
+                registry.load(path);
+            } else {
+                file.setLength(0);
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(firstStudentId);
+                file.writeInt(firstStaffId);
+            }
+            return registry;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Sequential load through a buffered stream; a torn last record is cut off
+    private void load(File path) throws IOException {
+        long start = System.nanoTime();
+        long valid = HEADER_SIZE;
+        try (CountingStream counted = new CountingStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            DataInputStream in = new DataInputStream(counted);
+            if (in.readInt() != MAGIC) throw new IOException("Not a patron registry file");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported registry version " + version);
+            nextStudentId = in.readInt();
+            nextStaffId = in.readInt();
+
+            while (true) {
+                try {
+                    int type = in.read();
+                    if (type < 0) break;
+                    int id = in.readInt();
+                    String name = BookCodec.readString(in);
+                    if (type == TYPE_STUDENT) {
+                        students.put(id, new Student(name, id, BookCodec.readString(in)));
+                        nextStudentId = Math.max(nextStudentId, id + 1);
+                    } else if (type == TYPE_STAFF) {
+                        staff.put(id, new Staff(name, id));
+                        nextStaffId = Math.max(nextStaffId, id + 1);
+                    } else {
+                        break;
+                    }
+                    valid = counted.count;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        if (file.length() != valid) {
+            file.setLength(valid);
+        }
+        loadNanos = System.nanoTime() - start;
+    }
+
+    // Record a new student and the allocator value after it
+    public synchronized void addStudent(Student student, int nextStudentId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_STUDENT);
+        out.writeInt(student.getId());
+        BookCodec.writeString(out, student.getName());
+        BookCodec.writeString(out, student.getDepartment());
+        append(bytes.toByteArray());
+        students.put(student.getId(), student);
+        this.nextStudentId = nextStudentId;
+        writeCounters();
+    }
+
+    // Record a new staff member and the allocator value after it
+    public synchronized void addStaff(Staff member, int nextStaffId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_STAFF);
+        out.writeInt(member.getId());
+        BookCodec.writeString(out, member.getName());
+        append(bytes.toByteArray());
+        staff.put(member.getId(), member);
+        this.nextStaffId = nextStaffId;
+        writeCounters();
+    }
+
+    private void append(byte[] record) throws IOException {
+        file.seek(file.length());
+        file.write(record);
+    }
+
+    // Counters live in the header so the allocators survive a restart even if
+    // IDs were handed out without a registration being completed
+    private void writeCounters() throws IOException {
+        file.seek(COUNTERS_POS);
+        file.writeInt(nextStudentId);
+        file.writeInt(nextStaffId);
+    }
+
+    public synchronized Map<Integer, Student> getStudents() { return new HashMap<>(students); }
+    public synchronized Map<Integer, Staff> getStaff() { return new HashMap<>(staff); }
+    public synchronized int getNextStudentId() { return nextStudentId; }
+    public synchronized int getNextStaffId() { return nextStaffId; }
+    public long getLoadMillis() { return loadNanos / 1_000_000; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    // Tracks how many bytes have been consumed, to find the end of the last whole record
+    private static class CountingStream extends FilterInputStream {
+        long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package library;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Range index over publish dates: epoch days in a sorted long array with the books
+// in a parallel slot array, ordered by (epoch day, insertion position). A date
+// range is two binary searches and the slots between them.
+//
+// New books go to a small sorted delta with the same layout, merged into the main
+// arrays once it outgrows a few times the square root of the index size, so an
+// insert never shifts more than the delta. Queries read both runs. Removing a
+// book (its date changed) shifts the run it is in; that is rare.
+// Not thread-safe: maintained under LibraryCollection's write lock, read under its
+// read lock.
+public class PublishDateIndex<T extends Book> {
+    private static final int MIN_DELTA = 4096;
+
+    private final Run main = new Run(16);
+    private final Run delta = new Run(MIN_DELTA);
+
+    // One sorted run of (day, book) slots
+    private final class Run {
+        long[] days;
+        Object[] books;
+        int size;
+
+        Run(int capacity) {
+            days = new long[capacity];
+            books = new Object[capacity];
+        }
+
+        // First slot whose (day, position) is not before the given one
+        int lowerBound(long day, int position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < day || (days[mid] == day && positionAt(mid) < position)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int positionAt(int slot) {
+            return ((Book) books[slot]).storePosition;
+        }
+
+        void insert(int slot, long day, Object book) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                books = Arrays.copyOf(books, size * 2);
+            }
+            System.arraycopy(days, slot, days, slot + 1, size - slot);
+            System.arraycopy(books, slot, books, slot + 1, size - slot);
+            days[slot] = day;
+            books[slot] = book;
+            size++;
+        }
+
+        boolean remove(long day, Book book) {
+            int slot = lowerBound(day, book.storePosition);
+            if (slot == size || books[slot] != book) return false;
+            System.arraycopy(days, slot + 1, days, slot, size - slot - 1);
+            System.arraycopy(books, slot + 1, books, slot, size - slot - 1);
+            books[--size] = null;
+            return true;
+        }
+
+        // Slots [from, to) as a read-only list
+        List<T> slice(int from, int to) {
+            return new AbstractList<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public T get(int index) {
+                    Objects.checkIndex(index, to - from);
+                    return (T) books[from + index];
+                }
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+            };
+        }
+    }
+
+    void add(T book) {
+        long day = book.getPublishDate().toEpochDay();
+        delta.insert(delta.lowerBound(day, book.storePosition), day, book);
+        if (delta.size >= Math.max(MIN_DELTA, 4 * (int) Math.sqrt(main.size))) {
+            merge();
+        }
+    }
+
+    void remove(T book) {
+        long day = book.getPublishDate().toEpochDay();
+        if (!delta.remove(day, book)) main.remove(day, book);
+    }
+
+    public int size() {
+        return main.size + delta.size;
+    }
+
+    // Number of books published in [fromDay, toDay]
+    int count(long fromDay, long toDay) {
+        if (fromDay > toDay) return 0;
+        int books = 0;
+        for (Run run : Arrays.asList(main, delta)) {
+            int end = toDay == Long.MAX_VALUE ? run.size : run.lowerBound(toDay + 1, Integer.MIN_VALUE);
+            books += end - run.lowerBound(fromDay, Integer.MIN_VALUE);
+        }
+        return books;
+    }
+
+    // Earliest epoch day on or after the given one, Long.MAX_VALUE if there is none
+    long nextDay(long fromDay) {
+        long next = Long.MAX_VALUE;
+        for (Run run : Arrays.asList(main, delta)) {
+            int slot = run.lowerBound(fromDay, Integer.MIN_VALUE);
+            if (slot < run.size) next = Math.min(next, run.days[slot]);
+        }
+        return next;
+    }
+
+    // Books published in [from, to]; either end may be null (open). One contiguous
+    // slice per run, each in date order.
+    List<Collection<T>> between(LocalDate from, LocalDate to) {
+        long fromDay = from != null ? from.toEpochDay() : Long.MIN_VALUE;
+        long toDay = to != null ? to.toEpochDay() : Long.MAX_VALUE;
+        List<Collection<T>> slices = new ArrayList<>(2);
+        if (fromDay > toDay) return slices;
+        for (Run run : Arrays.asList(main, delta)) {
+            int start = run.lowerBound(fromDay, Integer.MIN_VALUE);
+            int end = toDay == Long.MAX_VALUE ? run.size : run.lowerBound(toDay + 1, Integer.MIN_VALUE);
+            if (start < end) slices.add(run.slice(start, end));
+        }
+        return slices;
+    }
+
+    // Books published in [from, to] in date then insertion order, merging the two runs
+    void forEachBetween(LocalDate from, LocalDate to, Consumer<? super T> action) {
+        long fromDay = from != null ? from.toEpochDay() : Long.MIN_VALUE;
+        long toDay = to != null ? to.toEpochDay() : Long.MAX_VALUE;
+        if (fromDay > toDay) return;
+        int m = main.lowerBound(fromDay, Integer.MIN_VALUE);
+        int d = delta.lowerBound(fromDay, Integer.MIN_VALUE);
+        int mainEnd = toDay == Long.MAX_VALUE ? main.size : main.lowerBound(toDay + 1, Integer.MIN_VALUE);
+        int deltaEnd = toDay == Long.MAX_VALUE ? delta.size : delta.lowerBound(toDay + 1, Integer.MIN_VALUE);
+        while (m < mainEnd || d < deltaEnd) {
+            if (d == deltaEnd || (m < mainEnd && before(main, m, delta, d))) {
+                action.accept(cast(main.books[m++]));
+            } else {
+                action.accept(cast(delta.books[d++]));
+            }
+        }
+    }
+
+    // Up to limit books from (day, position) on, in date then insertion order,
+    // merging the two runs
+    List<T> scan(long fromDay, int fromPosition, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit, 1024));
+        int m = main.lowerBound(fromDay, fromPosition);
+        int d = delta.lowerBound(fromDay, fromPosition);
+        while (page.size() < limit && (m < main.size || d < delta.size)) {
+            if (d == delta.size || (m < main.size && before(main, m, delta, d))) {
+                page.add(cast(main.books[m++]));
+            } else {
+                page.add(cast(delta.books[d++]));
+            }
+        }
+        return page;
+    }
+
+    // Fold the delta into the main run, merging from the back so nothing is allocated
+    // unless the main arrays must grow
+    private void merge() {
+        int total = main.size + delta.size;
+        if (total > main.days.length) {
+            int capacity = Math.max(16, total + total / 2);
+            main.days = Arrays.copyOf(main.days, capacity);
+            main.books = Arrays.copyOf(main.books, capacity);
+        }
+        int m = main.size - 1;
+        int d = delta.size - 1;
+        for (int i = total - 1; d >= 0; i--) {
+            if (m >= 0 && before(delta, d, main, m)) {
+                main.days[i] = main.days[m];
+                main.books[i] = main.books[m--];
+            } else {
+                main.days[i] = delta.days[d];
+                main.books[i] = delta.books[d--];
+            }
+        }
+        main.size = total;
+        Arrays.fill(delta.books, 0, delta.size, null);
+        delta.size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object book) {
+        return (T) book;
+    }
+
+    // Whether slot i of run a sorts before slot j of run b
+    private boolean before(Run a, int i, Run b, int j) {
+        return a.days[i] < b.days[j] || (a.days[i] == b.days[j] && a.positionAt(i) < b.positionAt(j));
+    }
+}
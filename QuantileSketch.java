@@ -0,0 +1,124 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Approximate quantiles of non-negative values with relative accuracy (DDSketch
+// style): a value v > 0 is counted in bucket ceil(log_gamma v), gamma = (1 + a) / (1 - a),
+// and a quantile is reported as its bucket's midpoint, within a factor 1 ± a of the
+// true value of that rank. Memory grows with the log of the value range, not with the
+// number of values: counts up to a million need about 700 buckets at a = 1%.
+// Sketches with the same accuracy merge by adding bucket counts, which is exactly the
+// sketch of the combined stream.
+public class QuantileSketch {
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    private long zeros;  // values too small for a bucket
+    private long[] counts = new long[0];
+    private int offset;  // bucket index of counts[0]
+    private long count;
+
+    public QuantileSketch(double accuracy) {
+        if (!(accuracy > 0 && accuracy < 1)) throw new IllegalArgumentException("Accuracy must be in (0, 1)");
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        if (!(value >= 0)) throw new IllegalArgumentException("Value must be non-negative: " + value);
+        count++;
+        if (value < Double.MIN_NORMAL) {
+            zeros++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+        grow(bucket, bucket);
+        counts[bucket - offset]++;
+    }
+
+    // Value at rank q * (count - 1), e.g. q = 0.5 for the median; NaN if empty
+    public double quantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("Quantile must be in [0, 1]");
+        if (count == 0) return Double.NaN;
+        long rank = (long) (q * (count - 1));
+        long seen = zeros;
+        if (rank < seen) return 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (rank < seen) return 2 * Math.pow(gamma, i + offset) / (gamma + 1);
+        }
+        return 2 * Math.pow(gamma, counts.length - 1 + offset) / (gamma + 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) throw new IllegalArgumentException("Accuracy mismatch");
+        if (other.counts.length > 0) {
+            grow(other.offset, other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeros += other.zeros;
+        count += other.count;
+    }
+
+    // Widen counts to cover buckets low..high
+    private void grow(int low, int high) {
+        if (counts.length == 0) {
+            counts = new long[high - low + 1];
+            offset = low;
+            return;
+        }
+        int newLow = Math.min(low, offset);
+        int newHigh = Math.max(high, offset + counts.length - 1);
+        if (newLow == offset && newHigh == offset + counts.length - 1) return;
+        long[] wider = new long[newHigh - newLow + 1];
+        System.arraycopy(counts, 0, wider, offset - newLow, counts.length);
+        counts = wider;
+        offset = newLow;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeDouble(accuracy);
+        out.writeLong(zeros);
+        out.writeInt(offset);
+        out.writeInt(counts.length);
+        for (long c : counts) {
+            out.writeLong(c);
+        }
+    }
+
+    static QuantileSketch read(DataInput in) throws IOException {
+        double accuracy = in.readDouble();
+        if (!(accuracy > 0 && accuracy < 1)) throw new IOException("Corrupt quantile sketch");
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        sketch.zeros = in.readLong();
+        sketch.offset = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || length > (1 << 16)) throw new IOException("Corrupt quantile sketch");
+        sketch.counts = new long[length];
+        sketch.count = sketch.zeros;
+        for (int i = 0; i < length; i++) {
+            sketch.counts[i] = in.readLong();
+            sketch.count += sketch.counts[i];
+        }
+        return sketch;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d values, median %.1f, p90 %.1f, p99 %.1f", count,
+                             quantile(0.5), quantile(0.9), quantile(0.99));
+    }
+}
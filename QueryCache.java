@@ -0,0 +1,103 @@
+package library;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of query results for one LibraryCollection. Each result is
+// stored with a generation stamp: the sum of the collection's mutation counters for
+// the fields the query reads (plus its add counter). The counters only go up, so a
+// result is served only while its stamp is unchanged, i.e. while nothing it depends
+// on has been touched; anything else is recomputed. Stale entries are never looked
+// at again and age out of the LRU order.
+//
+// Bounded by entry count and by weight, the number of books the cached results
+// refer to, so a few catalog-sized results cannot pin unbounded memory.
+// Thread-safe; stamps are read and results computed under the collection's read
+// lock, so a stamp always describes the data the result was computed from.
+public class QueryCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static final class Entry {
+        final long stamp;
+        final Object value;
+        final long weight;
+
+        Entry(long stamp, Object value, long weight) {
+            this.stamp = stamp;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    public QueryCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) throw new IllegalArgumentException("Cache bounds must be positive");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    // The cached result for the key if its stamp still matches, otherwise a freshly
+    // computed one. Two threads missing at once may both compute; the last one wins.
+    @SuppressWarnings("unchecked")
+    <R> R get(String key, long stamp, Supplier<? extends R> compute) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.stamp == stamp) {
+                hits++;
+                return (R) entry.value;
+            }
+            misses++;
+        }
+        R value = compute.get();
+        put(key, new Entry(stamp, value, weigh(value)));
+        return value;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) weight -= old.weight;
+        weight += entry.weight;
+        // Least recently used first; a single result above the weight bound is not kept
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || weight > maxWeight)) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // Books referred to by a result: a collection's size, a map's values, 1 otherwise
+    private static long weigh(Object value) {
+        if (value instanceof Collection) return Math.max(1, ((Collection<?>) value).size());
+        if (value instanceof Map) {
+            long total = 1;
+            for (Object v : ((Map<?, ?>) value).values()) total += weigh(v);
+            return total;
+        }
+        return 1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries (weight %d), %d hits, %d misses, %d evictions",
+                             entries.size(), weight, hits, misses, evictions);
+    }
+}
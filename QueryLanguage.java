@@ -0,0 +1,302 @@
+package library;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+
+// Compact text syntax for BookQuery, e.g.
+//   author:martin available:true borrows>=5 published>2000-01-01 title:"clean code"
+//
+// Terms are separated by spaces and combined with AND. A term is field, operator
+// (: = > >= < <=) and value; values with spaces are quoted. Words without a field
+// search the title, so they cannot be combined with title:. Fields:
+//   author, title                contains, case-insensitive (":" or "="); at most once each
+//   available                    true/false (yes/no); at most once
+//   borrows (borrowCount)        integer comparison; ":" means exactly
+//   published (date)             yyyy-MM-dd or yyyy; ":" means that day or year
+// Repeated borrows and published terms narrow the range, e.g. borrows>=5 borrows<10.
+//
+// Parsed queries are kept in an LRU cache keyed by the query text, and each
+// BookQuery compiles its predicate once, so a repeated query skips both steps.
+public class QueryLanguage {
+    private static final int CACHE_SIZE = 128;
+
+    private static final Map<String, BookQuery> CACHE = new LinkedHashMap<String, BookQuery>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BookQuery> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static long hits;
+    private static long misses;
+
+    // Parsed and compiled query for the text, from the cache when possible.
+    // The returned BookQuery is shared; treat it as read-only.
+    public static BookQuery compile(String text) {
+        String key = text.trim();
+        synchronized (CACHE) {
+            BookQuery cached = CACHE.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        BookQuery query = parse(key);
+        query.toPredicate();  // compile now, outside any caller's lock
+        synchronized (CACHE) {
+            CACHE.put(key, query);
+        }
+        return query;
+    }
+
+    public static String cacheStats() {
+        synchronized (CACHE) {
+            return String.format("%d cached, %d hits, %d misses", CACHE.size(), hits, misses);
+        }
+    }
+
+    // Parse without caching; throws IllegalArgumentException describing the first error
+    public static BookQuery parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        private Boolean available;
+        private int minBorrows = Integer.MIN_VALUE;
+        private int maxBorrows = Integer.MAX_VALUE;
+        private LocalDate from;
+        private LocalDate to;
+        private String author;
+        private String title;
+        private final StringBuilder freeText = new StringBuilder();
+        private int freeTextStart = -1;
+        private int titleStart = -1;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        BookQuery parse() {
+            while (skipSpaces()) {
+                int start = pos;
+                String word = readWord();
+                String op = readOperator();
+                if (op == null) {
+                    if (freeTextStart < 0) freeTextStart = start;
+                    if (freeText.length() > 0) freeText.append(' ');
+                    freeText.append(word);
+                    continue;
+                }
+                if (word.isEmpty()) throw error("Missing field name", start);
+                int valueStart = pos;
+                String value = readValue();
+                if (value.isEmpty()) throw error("Missing value for '" + word + "'", valueStart);
+                term(word.toLowerCase(), op, value, start, valueStart);
+            }
+
+            if (title != null && freeText.length() > 0) {
+                throw error("Words without a field search the title; put them in title:\"...\" instead",
+                            Math.max(freeTextStart, titleStart));
+            }
+            if (freeText.length() > 0) title = freeText.toString();
+            BookQuery query = new BookQuery().authorContains(author).titleContains(title);
+            if (available != null) query.available(available);
+            if (minBorrows != Integer.MIN_VALUE) query.minBorrowCount(minBorrows);
+            if (maxBorrows != Integer.MAX_VALUE) query.maxBorrowCount(maxBorrows);
+            if (from != null || to != null) query.publishedBetween(from, to);
+            return query;
+        }
+
+        // Repeated borrows and published terms narrow the range; other fields may
+        // appear only once, since BookQuery holds a single value for each
+        private void term(String field, String op, String value, int start, int valueStart) {
+            switch (field) {
+                case "author":
+                    requireEquality(field, op, start);
+                    requireOnce(field, author, start);
+                    author = value;
+                    break;
+                case "title":
+                    requireEquality(field, op, start);
+                    requireOnce(field, title, start);
+                    title = value;
+                    titleStart = start;
+                    break;
+                case "available":
+                    requireEquality(field, op, start);
+                    requireOnce(field, available, start);
+                    available = parseBoolean(value, valueStart);
+                    break;
+                case "borrows":
+                case "borrowcount":
+                    borrows(op, parseInt(value, valueStart));
+                    break;
+                case "published":
+                case "date":
+                    published(op, value, valueStart);
+                    break;
+                default:
+                    throw error("Unknown field '" + field + "'", start);
+            }
+        }
+
+        private void borrows(String op, int n) {
+            switch (op) {
+                case ":":
+                case "=":
+                    minBorrows = Math.max(minBorrows, n);
+                    maxBorrows = Math.min(maxBorrows, n);
+                    break;
+                case ">":
+                    minBorrows = Math.max(minBorrows, n == Integer.MAX_VALUE ? n : n + 1);
+                    break;
+                case ">=":
+                    minBorrows = Math.max(minBorrows, n);
+                    break;
+                case "<":
+                    maxBorrows = Math.min(maxBorrows, n == Integer.MIN_VALUE ? n : n - 1);
+                    break;
+                default:
+                    maxBorrows = Math.min(maxBorrows, n);
+                    break;
+            }
+        }
+
+        // A bare year covers the whole year
+        private void published(String op, String value, int valueStart) {
+            LocalDate first;
+            LocalDate last;
+            try {
+                if (value.matches("\\d{4}")) {
+                    int year = Integer.parseInt(value);
+                    first = LocalDate.of(year, 1, 1);
+                    last = LocalDate.of(year, 12, 31);
+                } else {
+                    first = LocalDate.parse(value);
+                    last = first;
+                }
+            } catch (DateTimeException e) {
+                throw error("Invalid date '" + value + "' (use yyyy-MM-dd or yyyy)", valueStart);
+            }
+            switch (op) {
+                case ":":
+                case "=":
+                    narrowFrom(first);
+                    narrowTo(last);
+                    break;
+                case ">":
+                    narrowFrom(last.plusDays(1));
+                    break;
+                case ">=":
+                    narrowFrom(first);
+                    break;
+                case "<":
+                    narrowTo(first.minusDays(1));
+                    break;
+                default:
+                    narrowTo(last);
+                    break;
+            }
+        }
+
+        private void narrowFrom(LocalDate date) {
+            if (from == null || date.isAfter(from)) from = date;
+        }
+
+        private void narrowTo(LocalDate date) {
+            if (to == null || date.isBefore(to)) to = date;
+        }
+
+        private void requireEquality(String field, String op, int start) {
+            if (!op.equals(":") && !op.equals("=")) {
+                throw error("'" + field + "' only supports ':'", start);
+            }
+        }
+
+        private void requireOnce(String field, Object current, int start) {
+            if (current != null) throw error("'" + field + "' may appear only once", start);
+        }
+
+        private boolean parseBoolean(String value, int at) {
+            switch (value.toLowerCase()) {
+                case "true":
+                case "yes":
+                    return true;
+                case "false":
+                case "no":
+                    return false;
+                default:
+                    throw error("Expected true or false, got '" + value + "'", at);
+            }
+        }
+
+        private int parseInt(String value, int at) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw error("Expected a number, got '" + value + "'", at);
+            }
+        }
+
+        // ---------- lexer ----------
+
+        // Skip spaces; false at end of input
+        private boolean skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+            return pos < text.length();
+        }
+
+        // Field name or free-text word: up to an operator or a space
+        private String readWord() {
+            if (text.charAt(pos) == '"') return readQuoted();
+            int start = pos;
+            while (pos < text.length() && !Character.isWhitespace(text.charAt(pos))
+                   && ":=<>".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private String readOperator() {
+            if (pos >= text.length()) return null;
+            char c = text.charAt(pos);
+            if (c == ':' || c == '=') {
+                pos++;
+                return String.valueOf(c);
+            }
+            if (c == '<' || c == '>') {
+                pos++;
+                if (pos < text.length() && text.charAt(pos) == '=') {
+                    pos++;
+                    return c + "=";
+                }
+                return String.valueOf(c);
+            }
+            return null;
+        }
+
+        private String readValue() {
+            if (pos < text.length() && text.charAt(pos) == '"') return readQuoted();
+            int start = pos;
+            while (pos < text.length() && !Character.isWhitespace(text.charAt(pos))) pos++;
+            return text.substring(start, pos);
+        }
+
+        private String readQuoted() {
+            int start = pos++;
+            int end = text.indexOf('"', pos);
+            if (end < 0) throw error("Unterminated quote", start);
+            String value = text.substring(pos, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private IllegalArgumentException error(String message, int at) {
+            return new IllegalArgumentException(message + " at position " + (at + 1));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package library;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Cost-based planner for BookQuery. Every index that can serve one of the query's
+// conditions is costed by the number of candidates it would produce; the cheapest
+// access path wins and the full predicate is evaluated on its candidates only.
+public class QueryPlanner {
+    // Visiting a candidate through an index bucket costs a little more than a sequential scan step
+    private static final double INDEX_COST_FACTOR = 1.5;
+
+    public enum AccessPath { FULL_SCAN, AUTHOR_INDEX, AVAILABILITY_INDEX, POPULARITY_INDEX, DATE_INDEX }
+
+    // A chosen access path plus the costed alternatives, ready to run
+    public static class QueryPlan<T extends Book> {
+        private final BookQuery query;
+        private final AccessPath path;
+        private final long estimatedRows;
+        private final long totalRows;
+        private final Collection<? extends Collection<T>> buckets;  // null for a full scan
+        private final Map<AccessPath, Long> alternatives;
+
+        QueryPlan(BookQuery query, AccessPath path, long estimatedRows, long totalRows,
+                  Collection<? extends Collection<T>> buckets, Map<AccessPath, Long> alternatives) {
+            this.query = query;
+            this.path = path;
+            this.estimatedRows = estimatedRows;
+            this.totalRows = totalRows;
+            this.buckets = buckets;
+            this.alternatives = alternatives;
+        }
+
+        public AccessPath getAccessPath() { return path; }
+        public long getEstimatedRows() { return estimatedRows; }
+
+        // Run the plan against the store it was made for; the caller holds the read lock
+        void execute(BookStore<T> store, Consumer<? super T> sink) {
+            Predicate<Book> predicate = query.toPredicate();
+            if (buckets == null) {
+                store.forEach(book -> {
+                    if (predicate.test(book)) sink.accept(book);
+                });
+                return;
+            }
+            for (Collection<T> bucket : buckets) {
+                for (T book : bucket) {
+                    if (predicate.test(book)) sink.accept(book);
+                }
+            }
+        }
+
+        public String explain() {
+            StringBuilder out = new StringBuilder();
+            out.append("Query:  ").append(query).append('\n');
+            out.append("Plan:   ").append(path);
+            if (path == AccessPath.FULL_SCAN) {
+                out.append(" (").append(totalRows).append(" books)");
+            } else {
+                out.append(" (est. ").append(estimatedRows).append(" of ").append(totalRows).append(" books)");
+            }
+            out.append('\n');
+            List<String> conditions = query.describe();
+            out.append("Filter: ").append(conditions.isEmpty() ? "none" : String.join(" AND ", conditions)).append('\n');
+            for (Map.Entry<AccessPath, Long> alternative : alternatives.entrySet()) {
+                if (alternative.getKey() != path) {
+                    out.append("Rejected: ").append(alternative.getKey())
+                       .append(" (est. ").append(alternative.getValue()).append(")\n");
+                }
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return explain();
+        }
+    }
+
+    public static <T extends Book> QueryPlan<T> plan(BookQuery query, BookIndexes<T> indexes, long totalRows) {
+        Map<AccessPath, Long> costs = new EnumMap<>(AccessPath.class);
+        costs.put(AccessPath.FULL_SCAN, totalRows);
+        AccessPath best = AccessPath.FULL_SCAN;
+        double bestCost = totalRows;
+        Collection<? extends Collection<T>> bestBuckets = null;
+        long bestRows = totalRows;
+
+        if (indexes != null) {
+            // Counting stops once a path can no longer beat the current best
+            if (query.getAuthorContains() != null) {
+                List<Set<T>> buckets = indexes.authorsContaining(query.getAuthorContains());
+                long rows = BookIndexes.countUpTo(buckets, totalRows);
+                costs.put(AccessPath.AUTHOR_INDEX, rows);
+                if (rows * INDEX_COST_FACTOR < bestCost) {
+                    best = AccessPath.AUTHOR_INDEX;
+                    bestCost = rows * INDEX_COST_FACTOR;
+                    bestBuckets = buckets;
+                    bestRows = rows;
+                }
+            }
+            if (Boolean.FALSE.equals(query.getAvailable())) {
+                Set<T> borrowed = indexes.borrowed();
+                long rows = borrowed.size();
+                costs.put(AccessPath.AVAILABILITY_INDEX, rows);
+                if (rows * INDEX_COST_FACTOR < bestCost) {
+                    best = AccessPath.AVAILABILITY_INDEX;
+                    bestCost = rows * INDEX_COST_FACTOR;
+                    bestBuckets = Collections.singletonList(borrowed);
+                    bestRows = rows;
+                }
+            }
+            if (query.hasBorrowRange()) {
+                List<Collection<T>> buckets = indexes.borrowCountBetween(query.getMinBorrowCount(),
+                                                                        query.getMaxBorrowCount());
+                long rows = BookIndexes.countUpTo(buckets, (long) Math.ceil(bestCost / INDEX_COST_FACTOR));
+                costs.put(AccessPath.POPULARITY_INDEX, rows);
+                if (rows * INDEX_COST_FACTOR < bestCost) {
+                    best = AccessPath.POPULARITY_INDEX;
+                    bestCost = rows * INDEX_COST_FACTOR;
+                    bestBuckets = buckets;
+                    bestRows = rows;
+                }
+            }
+            if (query.hasDateRange()) {
+                List<Collection<T>> buckets = indexes.publishedBetween(query.getPublishedFrom(), query.getPublishedTo());
+                long rows = BookIndexes.countUpTo(buckets, (long) Math.ceil(bestCost / INDEX_COST_FACTOR));
+                costs.put(AccessPath.DATE_INDEX, rows);
+                if (rows * INDEX_COST_FACTOR < bestCost) {
+                    best = AccessPath.DATE_INDEX;
+                    bestBuckets = buckets;
+                    bestRows = rows;
+                }
+            }
+        }
+        return new QueryPlan<>(query, best, bestRows, totalRows, bestBuckets, costs);
+    }
+}
@@ -0,0 +1,202 @@
+package library;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Startup recovery: load the latest snapshot, then replay journal records
+// written after its checkpoint.
+public class RecoveryManager {
+
+    // What recovery did and how long it took
+    public static class RecoveryReport {
+        private final int snapshotBooks;
+        private final long checkpointLsn;
+        private final int replayed;
+        private final int skipped;
+        private final long lastLsn;
+        private final long elapsedNanos;
+
+        RecoveryReport(int snapshotBooks, long checkpointLsn, int replayed, int skipped, long lastLsn, long elapsedNanos) {
+            this.snapshotBooks = snapshotBooks;
+            this.checkpointLsn = checkpointLsn;
+            this.replayed = replayed;
+            this.skipped = skipped;
+            this.lastLsn = lastLsn;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getSnapshotBooks() { return snapshotBooks; }
+        public long getCheckpointLsn() { return checkpointLsn; }
+        public int getReplayed() { return replayed; }
+        public int getSkipped() { return skipped; }
+        public long getLastLsn() { return lastLsn; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        // Nothing was on disk: no snapshot and an empty journal
+        public boolean isEmpty() { return lastLsn == 0 && snapshotBooks == 0; }
+
+        @Override
+        public String toString() {
+            return String.format("%d books from snapshot (checkpoint LSN %d), %d journal records replayed, "
+                                 + "%d skipped, in %d ms", snapshotBooks, checkpointLsn, replayed, skipped,
+                                 getElapsedMillis());
+        }
+    }
+
+    // Rebuild the catalog into an empty collection
+    public static RecoveryReport recover(LibraryCollection<Book> library, String snapshotFile,
+                                         String journalFile) throws IOException {
+        return recover(library, snapshotFile, journalFile, record -> { });
+    }
+
+    // Same, also passing every intact journal record to observer, including those the
+    // snapshot covers, so state saved on its own schedule can catch up from its own LSN
+    public static RecoveryReport recover(LibraryCollection<Book> library, String snapshotFile, String journalFile,
+                                         Consumer<TransactionJournal.Record> observer) throws IOException {
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = CatalogSnapshot.read(snapshotFile);
+        long checkpointLsn = snapshot != null ? snapshot.getCheckpointLsn() : 0;
+        List<Book> books = snapshot != null ? snapshot.getBooks() : new ArrayList<>();
+        int snapshotBooks = books.size();
+
+        // Replay against plain maps; the collection is only touched once at the end
+        Replayer replayer = new Replayer(books, checkpointLsn);
+        long validLength = TransactionJournal.read(journalFile, record -> {
+            observer.accept(record);
+            replayer.apply(record);
+        });
+        TransactionJournal.truncateTo(journalFile, validLength);
+
+        library.addAll(books);
+        return new RecoveryReport(snapshotBooks, checkpointLsn, replayer.replayed, replayer.skipped,
+                                  Math.max(checkpointLsn, replayer.lastLsn), System.nanoTime() - start);
+    }
+
+    // Write a snapshot covering everything journaled so far, then drop the covered records
+    public static void checkpoint(LibraryCollection<Book> library, TransactionJournal journal,
+                                  String snapshotFile) throws IOException {
+        beginCheckpoint(library, journal).write(journal, snapshotFile);
+    }
+
+    // Fix the snapshot contents and the LSN they correspond to. Cheap: only the
+    // collection's write lock is taken, briefly; the slow part is PendingCheckpoint.write.
+    public static PendingCheckpoint beginCheckpoint(LibraryCollection<Book> library, TransactionJournal journal) {
+        synchronized (journal) {
+            return new PendingCheckpoint(journal.getLastLsn(), library.openView());
+        }
+    }
+
+    // A point-in-time view waiting to be written out, possibly on another thread
+    public static class PendingCheckpoint {
+        private final long lsn;
+        private final LibraryCollection<Book>.View view;
+
+        PendingCheckpoint(long lsn, LibraryCollection<Book>.View view) {
+            this.lsn = lsn;
+            this.view = view;
+        }
+
+        public long getLsn() { return lsn; }
+        public int size() { return view.size(); }
+
+        // Write the snapshot, then drop the journal records it covers
+        public void write(TransactionJournal journal, String snapshotFile) throws IOException {
+            try {
+                CatalogSnapshot.write(view, lsn, snapshotFile);
+            } finally {
+                view.close();
+            }
+            journal.truncateThrough(lsn);
+        }
+    }
+
+    // Applies journal records with the same matching rules as the interactive menus
+    private static class Replayer {
+        private final List<Book> books;
+        private final long checkpointLsn;
+        private final Map<String, List<Book>> byIsbn = new HashMap<>();
+        private final Map<String, List<Book>> byTitle = new HashMap<>();
+        int replayed;
+        int skipped;
+        long lastLsn;
+
+        Replayer(List<Book> books, long checkpointLsn) {
+            this.books = books;
+            this.checkpointLsn = checkpointLsn;
+            for (Book book : books) {
+                index(book);
+            }
+        }
+
+        void apply(TransactionJournal.Record record) {
+            lastLsn = Math.max(lastLsn, record.getLsn());
+            if (record.getLsn() <= checkpointLsn) return;  // already in the snapshot
+
+            if (record.getType() == TransactionJournal.Type.ADD_BOOK) {
+                books.add(record.getBook());
+                index(record.getBook());
+                replayed++;
+                return;
+            }
+
+            Book book = find(record);
+            if (book == null) {
+                skipped++;
+                return;
+            }
+            switch (record.getType()) {
+                case BORROW:
+                    book.setAvailable(false);
+                    book.incrementBorrowCount();
+                    break;
+                case RETURN:
+                case RESTORE:
+                    book.setAvailable(true);
+                    break;
+                case REMOVE:
+                    book.setAvailable(false);
+                    break;
+                default:
+                    break;
+            }
+            replayed++;
+        }
+
+        private void index(Book book) {
+            if (book.getIsbn() != null) {
+                byIsbn.computeIfAbsent(book.getIsbn(), i -> new ArrayList<>(1)).add(book);
+            }
+            byTitle.computeIfAbsent(book.getTitle().toLowerCase(), t -> new ArrayList<>(1)).add(book);
+        }
+
+        // The first copy in a suitable state among the ISBN matches when the record has
+        // an ISBN (any copy if none is), otherwise among the title matches
+        private Book find(TransactionJournal.Record record) {
+            List<Book> copies = record.getIsbn() != null ? byIsbn.get(record.getIsbn()) : null;
+            if (copies != null) {
+                Book book = firstSuitable(copies, record);
+                return book != null ? book : copies.get(0);
+            }
+            return firstSuitable(byTitle.get(record.getTitle().toLowerCase()), record);
+        }
+
+        // Borrows take an available copy and returns a borrowed one, as the menus do
+        private static Book firstSuitable(List<Book> candidates, TransactionJournal.Record record) {
+            if (candidates == null) return null;
+            for (Book book : candidates) {
+                switch (record.getType()) {
+                    case BORROW:
+                        if (book.isAvailable()) return book;
+                        break;
+                    case RETURN:
+                        if (!book.isAvailable()) return book;
+                        break;
+                    default:
+                        return book;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Hashing and compact serialization shared by the analytics sketches
+final class Sketches {
+    private Sketches() {
+    }
+
+    // 64-bit finalizer of MurmurHash3: spreads every input bit over the whole hash
+    static long hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb53a5ed1a85bL;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    // Strings hash through String.hashCode, which is fixed by the language spec, so
+    // sketches saved by one run stay valid in the next
+    static long hash(String value) {
+        return hash(value == null ? 0 : value.hashCode());
+    }
+
+    // Counters of a quiet day are mostly zero: write only the non-zero cells
+    static void writeSparse(DataOutput out, long[] values) throws IOException {
+        int nonZero = 0;
+        for (long value : values) {
+            if (value != 0) nonZero++;
+        }
+        out.writeInt(values.length);
+        out.writeInt(nonZero);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(values[i]);
+            }
+        }
+    }
+
+    static long[] readSparse(DataInput in, int expectedLength) throws IOException {
+        int length = in.readInt();
+        if (length != expectedLength) throw new IOException("Sketch size mismatch: " + length);
+        long[] values = new long[length];
+        int nonZero = in.readInt();
+        for (int i = 0; i < nonZero; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= length) throw new IOException("Corrupt sketch cell " + index);
+            values[index] = in.readLong();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,93 @@
+package library;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Load test for the disk-backed store: inserts N books in random ISBN order,
+// then measures point lookups and an ordered scan. Heap use stays bounded by the
+// memtable, sparse indexes and bloom filters rather than growing with N.
+//
+// Usage: java library.StorageBenchmark [records] [directory]
+public class StorageBenchmark {
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path dir = args.length > 1 ? Paths.get(args[1]) : Files.createTempDirectory("lsm-bench");
+        Random random = new Random(42);
+
+        // Random permutation of ISBN numbers, so inserts arrive out of key order
+        int[] order = new int[records];
+        for (int i = 0; i < records; i++) order[i] = i;
+        for (int i = records - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        System.out.println("=== STORAGE BENCHMARK: " + records + " books in " + dir + " ===");
+        LibraryCollection<Book> library = new LibraryCollection<>(new LsmBookStore(dir));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            library.addBook(book(order[i]));
+        }
+        long insertNanos = System.nanoTime() - start;
+        System.out.printf("Insert:  %,d books in %,d ms (%,.0f books/s)%n", records, insertNanos / 1_000_000,
+                          records / (insertNanos / 1e9));
+        System.out.printf("Heap:    %,d MB used after GC%n", usedHeapMb());
+
+        int lookups = 100_000;
+        long[] latencies = new long[lookups];
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            String isbn = isbn(random.nextInt(records));
+            long t = System.nanoTime();
+            if (library.findByIsbn(isbn).isPresent()) found++;
+            latencies[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("Lookup:  %,d random ISBNs, %,d found, avg %.1f us, p99 %.1f us%n", lookups, found,
+                          Arrays.stream(latencies).average().orElse(0) / 1000, latencies[lookups * 99 / 100] / 1000.0);
+
+        start = System.nanoTime();
+        long scanned = 0;
+        String previous = "";
+        boolean ordered = true;
+        for (Iterator<Book> it = library.scanByIsbn(null); it.hasNext(); ) {
+            String isbn = it.next().getIsbn();
+            ordered &= isbn.compareTo(previous) > 0;
+            previous = isbn;
+            scanned++;
+        }
+        long scanNanos = System.nanoTime() - start;
+        System.out.printf("Scan:    %,d books in ISBN order (%s) in %,d ms (%,.0f books/s)%n", scanned,
+                          ordered ? "verified" : "OUT OF ORDER", scanNanos / 1_000_000, scanned / (scanNanos / 1e9));
+
+        library.close();
+        System.out.printf("Disk:    %,d MB%n", directorySize(dir) / (1 << 20));
+    }
+
+    private static Book book(int n) {
+        return new Book("Title " + n, "Author " + (n % 50_000), isbn(n),
+                        LocalDate.ofEpochDay(n % 40_000));
+    }
+
+    private static String isbn(int n) {
+        return String.format("978-%010d", n);
+    }
+
+    private static long usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package library;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// One shared instance per distinct value for strings that many objects repeat: the
+// author of every book by the same writer, the department of every student in it,
+// the title of every copy of a book. Books and students intern these fields when
+// they are created, changed or deserialized, so a catalog loaded from CSV, JSON
+// Lines, a snapshot or the mapped catalog keeps one "Robert C. Martin" rather than
+// one per book. Shared instances also let equality checks on these fields (e.g.
+// CollationKeys.Key.isFor) succeed on identity.
+//
+// Authors and departments have few distinct values, so their pools are exact maps
+// (bounded by maxSize; past it new values are returned as they are). Most titles are
+// unique, and a map entry per title would cost more than the copies save, so titles
+// go through a lossy pool instead: a fixed array of slots indexed by hash, where a
+// new value simply replaces the one in its slot. Copies of a title arriving close
+// together, as from an import, or popular enough to keep their slot, are shared; the
+// pool never grows. Pools are disabled with -Dlibrary.stringPool=false. See
+// MemoryBenchmark for the heap they save.
+public final class StringPool {
+    public static final StringPool AUTHORS = exact(1 << 20);
+    public static final StringPool DEPARTMENTS = exact(1 << 12);
+    public static final StringPool TITLES = lossy(1 << 16);
+
+    // Read on every intern, so the benchmark can compare both settings in one run
+    static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("library.stringPool"));
+
+    private final ConcurrentHashMap<String, String> pool;  // exact pools
+    private final int maxSize;
+    private final String[] slots;  // lossy pools; racy reads and writes of immutable strings are safe
+    private final LongAdder shared = new LongAdder();
+
+    private StringPool(ConcurrentHashMap<String, String> pool, int maxSize, String[] slots) {
+        this.pool = pool;
+        this.maxSize = maxSize;
+        this.slots = slots;
+    }
+
+    // Keeps every distinct value, up to maxSize of them
+    public static StringPool exact(int maxSize) {
+        return new StringPool(new ConcurrentHashMap<>(), maxSize, null);
+    }
+
+    // Keeps the last value seen in each of slots (a power of two) hash slots
+    public static StringPool lossy(int slots) {
+        if (slots <= 0 || Integer.bitCount(slots) != 1) throw new IllegalArgumentException("Slots must be a power of two");
+        return new StringPool(null, 0, new String[slots]);
+    }
+
+    // The pooled instance equal to value; value itself if it is not pooled yet
+    public String intern(String value) {
+        if (value == null || !enabled) return value;
+        String canonical = slots != null ? internLossy(value) : internExact(value);
+        if (canonical != value) shared.increment();
+        return canonical;
+    }
+
+    private String internExact(String value) {
+        String canonical = pool.get(value);
+        if (canonical != null || pool.size() >= maxSize) return canonical != null ? canonical : value;
+        canonical = pool.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+
+    private String internLossy(String value) {
+        int h = value.hashCode();
+        int slot = (h ^ (h >>> 16)) & (slots.length - 1);
+        String current = slots[slot];
+        if (value.equals(current)) return current;
+        slots[slot] = value;
+        return value;
+    }
+
+    // Distinct values held
+    public int size() {
+        if (pool != null) return pool.size();
+        int used = 0;
+        for (String slot : slots) {
+            if (slot != null) used++;
+        }
+        return used;
+    }
+
+    // Duplicates replaced by a pooled instance so far
+    public long getShared() {
+        return shared.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d held, %d duplicates shared", size(), shared.sum());
+    }
+}
@@ -1,5 +1,7 @@
 package library;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class Student extends Person implements Serializable {
@@ -7,11 +9,11 @@ public class Student extends Person implements Serializable {
 
     public Student(String name, int id, String department) {
         super(name, id);
-        this.department = department;
+        this.department = StringPool.DEPARTMENTS.intern(department);
     }
 
     public String getDepartment() { return department; }
-    public void setDepartment(String department) { this.department = department; }
+    public void setDepartment(String department) { this.department = StringPool.DEPARTMENTS.intern(department); }
 
     public void borrowBook(Book b) {
         if (b.isAvailable()) {
@@ -23,6 +25,11 @@ public class Student extends Person implements Serializable {
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        department = StringPool.DEPARTMENTS.intern(department);
+    }
+
     @Override
     public String toString() {
         return String.format("Student{name='%s', id=%d, department='%s'}", 
@@ -0,0 +1,244 @@
+package library;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Streaming borrow analytics in bounded memory, fed one transaction at a time as it is
+// journaled. Each day gets a Window of sketches: distinct borrowers (HyperLogLog),
+// most borrowed titles (HeavyHitters over a Count-Min Sketch) and the distribution of
+// the borrowed books' borrow counts (QuantileSketch). All of them merge, so any range
+// of days, a week or a month, is answered by merging its day windows. Days older than
+// RETAINED_DAYS are folded into one all-time window. A day costs at most about 40 KB
+// however busy it is, where exact answers would need every borrower and title.
+// Borrow and return counts per minute, hour and day are kept alongside in an
+// ActivitySeries. Thread-safe.
+public class TransactionAnalytics {
+    // Layout: int magic, int version, older window, int dayCount,
+    //         dayCount x (long epochDay, window), activity series (version 2 on),
+    //         long crc32 of everything before it
+    private static final int MAGIC = 0x4C42414E; // "LBAN"
+    private static final int VERSION = 2;
+    static final int RETAINED_DAYS = 92;
+    static final int PRECISION = 11;  // 2048 registers, about 2.3% error
+    static final int DEPTH = 4;
+    static final int WIDTH = 1024;  // over-count of at most about 0.3% of the window's borrows
+    static final int TOP_CAPACITY = 20;
+    static final double ACCURACY = 0.01;
+
+    private final ZoneId zone;
+    private final TreeMap<Long, Window> days = new TreeMap<>();
+    private final Window older;
+    private final ActivitySeries activity;
+
+    // Sketches for one stretch of time
+    public static final class Window {
+        private final HyperLogLog borrowers;
+        private final HeavyHitters titles;
+        private final QuantileSketch borrowCounts;
+        private long borrows;
+        private long returns;
+
+        public Window() {
+            this(new HyperLogLog(PRECISION), new HeavyHitters(TOP_CAPACITY, DEPTH, WIDTH), new QuantileSketch(ACCURACY));
+        }
+
+        private Window(HyperLogLog borrowers, HeavyHitters titles, QuantileSketch borrowCounts) {
+            this.borrowers = borrowers;
+            this.titles = titles;
+            this.borrowCounts = borrowCounts;
+        }
+
+        public long getBorrows() { return borrows; }
+        public long getReturns() { return returns; }
+
+        // Approximate number of different patrons who borrowed
+        public long distinctBorrowers() {
+            return borrows == 0 ? 0 : borrowers.estimate();
+        }
+
+        // Up to n most borrowed titles with their approximate borrow counts
+        public Map<String, Long> topTitles(int n) {
+            return titles.top(n);
+        }
+
+        // Approximate borrows of one title; never below the true count
+        public long titleBorrows(String title) {
+            return titles.estimate(title);
+        }
+
+        // Borrow count the borrowed book had reached, at rank q of this window's
+        // borrows (q = 0.5: half the borrows were of books borrowed at most this often)
+        public double borrowCountQuantile(double q) {
+            return borrowCounts.quantile(q);
+        }
+
+        public void merge(Window other) {
+            borrowers.merge(other.borrowers);
+            titles.merge(other.titles);
+            borrowCounts.merge(other.borrowCounts);
+            borrows += other.borrows;
+            returns += other.returns;
+        }
+
+        void borrow(int patronId, String title, int borrowCount) {
+            borrows++;
+            borrowers.add(patronId);
+            titles.add(title);
+            borrowCounts.add(borrowCount);
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeLong(borrows);
+            out.writeLong(returns);
+            borrowers.write(out);
+            titles.write(out);
+            borrowCounts.write(out);
+        }
+
+        static Window read(DataInput in) throws IOException {
+            long borrows = in.readLong();
+            long returns = in.readLong();
+            Window window = new Window(HyperLogLog.read(in), HeavyHitters.read(in), QuantileSketch.read(in));
+            window.borrows = borrows;
+            window.returns = returns;
+            return window;
+        }
+    }
+
+    public TransactionAnalytics() {
+        this(ZoneId.systemDefault(), new Window(), new ActivitySeries());
+    }
+
+    private TransactionAnalytics(ZoneId zone, Window older, ActivitySeries activity) {
+        this.zone = zone;
+        this.older = older;
+        this.activity = activity;
+    }
+
+    // Per-minute, per-hour and per-day borrow and return counts
+    public ActivitySeries getActivity() {
+        return activity;
+    }
+
+    // Count one journaled transaction as happening now
+    public void record(TransactionJournal.Type type, int patronId, Book book) {
+        record(type, patronId, book.getTitle(), book.getBorrowCount(), System.currentTimeMillis());
+    }
+
+    // Only borrows and returns are counted; catalog changes are ignored
+    public synchronized void record(TransactionJournal.Type type, int patronId, String title, int borrowCount,
+                                    long timestamp) {
+        if (type != TransactionJournal.Type.BORROW && type != TransactionJournal.Type.RETURN) return;
+        activity.record(type, timestamp);
+        long day = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate().toEpochDay();
+        Window window = days.get(day);
+        if (window == null) {
+            if (!days.isEmpty() && day <= days.lastKey() - RETAINED_DAYS) {
+                window = older;  // a late event for a day already folded
+            } else {
+                window = new Window();
+                days.put(day, window);
+                expire();
+            }
+        }
+        if (type == TransactionJournal.Type.BORROW) {
+            window.borrow(patronId, title, Math.max(0, borrowCount));
+        } else {
+            window.returns++;
+        }
+    }
+
+    // Merged sketches for the days from..to inclusive, within the retained days
+    public synchronized Window window(LocalDate from, LocalDate to) {
+        Window merged = new Window();
+        for (Window day : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            merged.merge(day);
+        }
+        return merged;
+    }
+
+    // The last n days, today included
+    public Window lastDays(int n) {
+        LocalDate today = LocalDate.now(zone);
+        return window(today.minusDays(n - 1), today);
+    }
+
+    // Everything recorded, retained days and older ones alike
+    public synchronized Window allTime() {
+        Window merged = new Window();
+        merged.merge(older);
+        for (Window day : days.values()) {
+            merged.merge(day);
+        }
+        return merged;
+    }
+
+    // Oldest day still kept separately, or null if none
+    public synchronized LocalDate firstRetainedDay() {
+        return days.isEmpty() ? null : LocalDate.ofEpochDay(days.firstKey());
+    }
+
+    // Fold days more than RETAINED_DAYS before the newest into the all-time window
+    private void expire() {
+        long cutoff = days.lastKey() - RETAINED_DAYS;
+        while (!days.isEmpty() && days.firstKey() <= cutoff) {
+            older.merge(days.pollFirstEntry().getValue());
+        }
+    }
+
+    // Write to a temp file, then atomically replace the previous one
+    public synchronized void save(String filename) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            older.write(out);
+            out.writeInt(days.size());
+            for (Map.Entry<Long, Window> day : days.entrySet()) {
+                out.writeLong(day.getKey());
+                day.getValue().write(out);
+            }
+            activity.write(out);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Load saved analytics; empty ones if nothing has been saved yet
+    public static TransactionAnalytics load(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) return new TransactionAnalytics();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) throw new IOException("Not an analytics file");
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported analytics version " + version);
+            Window older = Window.read(in);
+            int count = in.readInt();
+            TreeMap<Long, Window> days = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                long day = in.readLong();
+                days.put(day, Window.read(in));
+            }
+            ActivitySeries activity = version >= 2 ? ActivitySeries.read(in) : new ActivitySeries();
+            TransactionAnalytics analytics = new TransactionAnalytics(ZoneId.systemDefault(), older, activity);
+            analytics.days.putAll(days);
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException("Analytics checksum mismatch");
+            return analytics;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package library;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Structured, append-only transaction journal used for crash recovery.
+// Every record carries a log sequence number (LSN) so that replay can skip
+// records already contained in a snapshot.
+public class TransactionJournal implements Closeable {
+    // Frame layout: int bodyLength, body, int crc32(body)
+    // Body layout:  long lsn, long timestamp, u8 type, int patronId, payload
+    //   ADD_BOOK payload: BookCodec record
+    //   other payloads:   title, isbn (BookCodec string encoding)
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    public enum Type { ADD_BOOK, BORROW, RETURN, REMOVE, RESTORE }
+
+    // One decoded journal record
+    public static class Record {
+        private final long lsn;
+        private final long timestamp;
+        private final Type type;
+        private final int patronId;
+        private final String title;
+        private final String isbn;
+        private final Book book;
+
+        Record(long lsn, long timestamp, Type type, int patronId, String title, String isbn, Book book) {
+            this.lsn = lsn;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.patronId = patronId;
+            this.title = title;
+            this.isbn = isbn;
+            this.book = book;
+        }
+
+        public long getLsn() { return lsn; }
+        public long getTimestamp() { return timestamp; }
+        public Type getType() { return type; }
+        public int getPatronId() { return patronId; }
+        public String getTitle() { return title; }
+        public String getIsbn() { return isbn; }
+        public Book getBook() { return book; }  // only set for ADD_BOOK
+    }
+
+    private final String filename;
+    private FileOutputStream out;
+    private long lastLsn;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    private final DataOutputStream bodyOut = new DataOutputStream(body);
+    private final CRC32 crc = new CRC32();
+
+    private TransactionJournal(String filename, long lastLsn) throws IOException {
+        this.filename = filename;
+        this.lastLsn = lastLsn;
+        this.out = new FileOutputStream(filename, true);
+    }
+
+    // Open for appending; new records are numbered after lastLsn
+    public static TransactionJournal open(String filename, long lastLsn) throws IOException {
+        return new TransactionJournal(filename, lastLsn);
+    }
+
+    // Append one record and return its LSN. Records are written with a single
+    // write call so a crash leaves at most one torn record at the tail.
+    public synchronized long append(Type type, int patronId, Book book) throws IOException {
+        long lsn = lastLsn + 1;
+        body.reset();
+        bodyOut.writeLong(lsn);
+        bodyOut.writeLong(System.currentTimeMillis());
+        bodyOut.writeByte(type.ordinal());
+        bodyOut.writeInt(patronId);
+        if (type == Type.ADD_BOOK) {
+            BookCodec.write(bodyOut, book);
+        } else {
+            BookCodec.writeString(bodyOut, book.getTitle());
+            BookCodec.writeString(bodyOut, book.getIsbn());
+        }
+        bodyOut.flush();
+
+        crc.reset();
+        crc.update(body.toByteArray(), 0, body.size());
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(body.size() + 8);
+        DataOutputStream frameOut = new DataOutputStream(frame);
+        frameOut.writeInt(body.size());
+        body.writeTo(frameOut);
+        frameOut.writeInt((int) crc.getValue());
+        out.write(frame.toByteArray());
+        lastLsn = lsn;
+        return lsn;
+    }
+
+    public synchronized long getLastLsn() { return lastLsn; }
+
+    // Drop all records up to and including lsn, once they are covered by a snapshot.
+    // Records appended after lsn (e.g. while a background snapshot was being written)
+    // are kept by copying them to a new file.
+    public synchronized boolean truncateThrough(long lsn) throws IOException {
+        if (lsn > lastLsn) return false;
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        if (lsn < lastLsn) {
+            // Copied while out is still open, so a failure here leaves the journal as it was
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream tail = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                readFrames(filename, (bytes, length, storedCrc) -> {
+                    if (ByteBuffer.wrap(bytes).getLong() > lsn) {
+                        tail.writeInt(length);
+                        tail.write(bytes, 0, length);
+                        tail.writeInt(storedCrc);
+                    }
+                });
+                tail.flush();
+                file.getFD().sync();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+        out.close();
+        FileOutputStream reopened = null;
+        try {
+            if (lsn == lastLsn) {
+                reopened = new FileOutputStream(filename, false);
+            } else {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                reopened = new FileOutputStream(filename, true);
+            }
+        } finally {
+            // Appends keep working even if the truncation failed
+            out = reopened != null ? reopened : new FileOutputStream(filename, true);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // Read every intact record in order. Stops at the first torn or corrupt
+    // record and returns the byte length of the valid prefix.
+    public static long read(String filename, Consumer<Record> consumer) throws IOException {
+        return readFrames(filename, (bytes, length, storedCrc) -> consumer.accept(decode(bytes)));
+    }
+
+    private interface FrameVisitor {
+        void visit(byte[] body, int length, int storedCrc) throws IOException;
+    }
+
+    // Walk the CRC-valid frames of a journal file
+    private static long readFrames(String filename, FrameVisitor visitor) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) return 0;
+        long valid = 0;
+        CRC32 check = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                byte[] bytes;
+                int storedCrc;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) break;
+                    bytes = new byte[length];
+                    in.readFully(bytes);
+                    storedCrc = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                check.reset();
+                check.update(bytes, 0, length);
+                if ((int) check.getValue() != storedCrc) break;
+                visitor.visit(bytes, length, storedCrc);
+                valid += length + 8;
+            }
+        }
+        return valid;
+    }
+
+    // Cut off a torn tail left by a crash so new appends follow the last good record
+    public static void truncateTo(String filename, long length) throws IOException {
+        File file = new File(filename);
+        if (!file.exists() || file.length() == length) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    private static Record decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        long lsn = in.readLong();
+        long timestamp = in.readLong();
+        Type type = Type.values()[in.readUnsignedByte()];
+        int patronId = in.readInt();
+        if (type == Type.ADD_BOOK) {
+            Book book = BookCodec.read(in);
+            return new Record(lsn, timestamp, type, patronId, book.getTitle(), book.getIsbn(), book);
+        }
+        String title = BookCodec.readString(in);
+        String isbn = BookCodec.readString(in);
+        return new Record(lsn, timestamp, type, patronId, title, isbn, null);
+    }
+}